@@ -31,6 +31,7 @@ import com.intellij.util.ui.UIUtil;
 import com.ypwang.plugin.GoLinterSettings;
 import com.ypwang.plugin.UtilitiesKt;
 import com.ypwang.plugin.model.GoLinter;
+import com.ypwang.plugin.model.ProcessOptions;
 import com.ypwang.plugin.platform.Platform;
 import kotlin.Unit;
 import org.apache.commons.lang3.StringUtils;
@@ -50,7 +51,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
@@ -93,6 +93,16 @@ public class GoLinterConfigurable implements SearchableConfigurable, Disposable
     private JCheckBox projectRootCheckBox;
     private JComboBox<Integer> concurrencyComboBox;
     private JComboBox severity;
+    private JSpinner maxParallelRunsSpinner;
+    private JSpinner debounceWindowSpinner;
+    private JCheckBox prefillOnOpenCheckBox;
+    private JComboBox<String> resourcePolicyComboBox;
+    private JCheckBox adaptiveConcurrencyCheckBox;
+    private JSpinner maxOutputSizeSpinner;
+    private JCheckBox relintDependentsCheckBox;
+    private JSpinner persistentCacheSizeSpinner;
+    private JCheckBox staleWhileRevalidateCheckBox;
+    private JCheckBox lintUnsavedCheckBox;
     private AsyncProcessIcon.Big refreshProcessIcon;
     private JTable linterTable;
 
@@ -116,6 +126,20 @@ public class GoLinterConfigurable implements SearchableConfigurable, Disposable
         linterChooseComboBox.setRenderer(new FileExistCellRender(project));
         linterChooseComboBox.addActionListener(this::linterSelected);
         concurrencyComboBox.addActionListener(l -> modified = true);
+        maxParallelRunsSpinner.setModel(new SpinnerNumberModel(0, 0, 64, 1));
+        maxParallelRunsSpinner.addChangeListener(l -> modified = true);
+        debounceWindowSpinner.setModel(new SpinnerNumberModel(0, 0, 5000, 50));
+        debounceWindowSpinner.addChangeListener(l -> modified = true);
+        prefillOnOpenCheckBox.addItemListener(l -> modified = true);
+        resourcePolicyComboBox.addActionListener(l -> modified = true);
+        adaptiveConcurrencyCheckBox.addItemListener(l -> modified = true);
+        maxOutputSizeSpinner.setModel(new SpinnerNumberModel(1, 1, 4096, 16));
+        maxOutputSizeSpinner.addChangeListener(l -> modified = true);
+        relintDependentsCheckBox.addItemListener(l -> modified = true);
+        persistentCacheSizeSpinner.setModel(new SpinnerNumberModel(0, 0, 4096, 16));
+        persistentCacheSizeSpinner.addChangeListener(l -> modified = true);
+        staleWhileRevalidateCheckBox.addItemListener(l -> modified = true);
+        lintUnsavedCheckBox.addItemListener(l -> modified = true);
         linterChooseButton.addActionListener(e -> linterChoose());
         projectRootCheckBox.addItemListener(this::enableProjectRoot);
         customProjectSelectButton.addActionListener(e -> customProjectDir());
@@ -391,7 +415,7 @@ public class GoLinterConfigurable implements SearchableConfigurable, Disposable
                                     arguments,
                                     StringUtils.isNotEmpty(projectDir.getText()) ? platform.toRunningOSPath(projectDir.getText()) : null,
                                     Collections.singletonList(Const_Path),
-                                    Charset.defaultCharset()
+                                    new ProcessOptions()
                             )
                     ));
                 } catch (Exception e) {
@@ -495,6 +519,17 @@ public class GoLinterConfigurable implements SearchableConfigurable, Disposable
 
         settings.setSeverity((String) severity.getSelectedItem());
 
+        settings.setMaxParallelRuns((Integer) maxParallelRunsSpinner.getValue());
+        settings.setDebounceWindow((Integer) debounceWindowSpinner.getValue());
+        settings.setPrefillOnOpen(prefillOnOpenCheckBox.isSelected());
+        settings.setResourcePolicy((String) resourcePolicyComboBox.getSelectedItem());
+        settings.setAdaptiveConcurrency(adaptiveConcurrencyCheckBox.isSelected());
+        settings.setMaxOutputSize((Integer) maxOutputSizeSpinner.getValue());
+        settings.setRelintDependents(relintDependentsCheckBox.isSelected());
+        settings.setPersistentCacheSize((Integer) persistentCacheSizeSpinner.getValue());
+        settings.setStaleWhileRevalidate(staleWhileRevalidateCheckBox.isSelected());
+        settings.setLintUnsaved(lintUnsavedCheckBox.isSelected());
+
         lastSavedTime = System.currentTimeMillis();
         modified = false;
     }
@@ -539,6 +574,17 @@ public class GoLinterConfigurable implements SearchableConfigurable, Disposable
 
         severity.setSelectedItem(settings.getSeverity());
 
+        maxParallelRunsSpinner.setValue(settings.getMaxParallelRuns());
+        debounceWindowSpinner.setValue(settings.getDebounceWindow());
+        prefillOnOpenCheckBox.setSelected(settings.getPrefillOnOpen());
+        resourcePolicyComboBox.setSelectedItem(settings.getResourcePolicy());
+        adaptiveConcurrencyCheckBox.setSelected(settings.getAdaptiveConcurrency());
+        maxOutputSizeSpinner.setValue(settings.getMaxOutputSize());
+        relintDependentsCheckBox.setSelected(settings.getRelintDependents());
+        persistentCacheSizeSpinner.setValue(settings.getPersistentCacheSize());
+        staleWhileRevalidateCheckBox.setSelected(settings.getStaleWhileRevalidate());
+        lintUnsavedCheckBox.setSelected(settings.getLintUnsaved());
+
         modified = false;
     }
 
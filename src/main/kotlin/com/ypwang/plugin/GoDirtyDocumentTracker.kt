@@ -0,0 +1,96 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.service
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.editor.EditorFactory
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.fileEditor.FileDocumentManagerListener
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+// files with unsaved changes, tracked from document & save events, so highlighting thread knows a file is dirty without asking EDT
+// also probes EDT latency now and then, to tell how often asking EDT (and giving up after 1s) would have skipped a lint, summed up in log on close
+class GoDirtyDocumentTracker(private val project: Project) : Disposable {
+    companion object {
+        private const val EdtTimeout = 1000L
+        // probe at most once per interval (ms)
+        private const val ProbeInterval = 10 * 1000L
+
+        @JvmStatic
+        fun getInstance(project: Project): GoDirtyDocumentTracker = project.service()
+    }
+
+    private val dirty = ConcurrentHashMap.newKeySet<VirtualFile>()
+
+    private val queries = AtomicLong()
+    private val probes = AtomicLong()
+    // probes EDT took longer than 1s to answer
+    private val timeouts = AtomicLong()
+    private val maxLatency = AtomicLong()
+    private val lastProbe = AtomicLong()
+    private val probing = AtomicBoolean(false)
+
+    init {
+        val fileDocumentManager = FileDocumentManager.getInstance()
+        fileDocumentManager.unsavedDocuments.forEach { doc -> fileDocumentManager.getFile(doc)?.let { dirty.add(it) } }
+
+        EditorFactory.getInstance().eventMulticaster.addDocumentListener(object : DocumentListener {
+            override fun documentChanged(event: DocumentEvent) {
+                val file = fileDocumentManager.getFile(event.document) ?: return
+                if (fileDocumentManager.isDocumentUnsaved(event.document))
+                    dirty.add(file)
+            }
+        }, this)
+
+        ApplicationManager.getApplication().messageBus.connect(this).subscribe(FileDocumentManagerListener.TOPIC, object : FileDocumentManagerListener {
+            override fun beforeDocumentSaving(document: Document) {
+                fileDocumentManager.getFile(document)?.let { dirty.remove(it) }
+            }
+
+            override fun fileContentReloaded(file: VirtualFile, document: Document) {
+                dirty.remove(file)
+            }
+
+            override fun unsavedDocumentDropped(document: Document) {
+                fileDocumentManager.getFile(document)?.let { dirty.remove(it) }
+            }
+        })
+    }
+
+    override fun dispose() {
+        dirty.clear()
+        logger.info("Dirty checks of ${project.name}: ${queries.get()} queries, ${probes.get()} EDT probes, ${timeouts.get()} over ${EdtTimeout}ms, max latency ${maxLatency.get()}ms")
+    }
+
+    fun isDirty(file: VirtualFile): Boolean {
+        queries.incrementAndGet()
+        probe()
+        return file in dirty
+    }
+
+    // post to EDT and measure how long it takes to run, never wait for it
+    private fun probe() {
+        val now = System.currentTimeMillis()
+        if (now - lastProbe.get() < ProbeInterval || !probing.compareAndSet(false, true))
+            return
+
+        lastProbe.set(now)
+        probes.incrementAndGet()
+        ApplicationManager.getApplication().invokeLater({
+            val latency = System.currentTimeMillis() - now
+            maxLatency.accumulateAndGet(latency, ::maxOf)
+            if (latency > EdtTimeout) {
+                timeouts.incrementAndGet()
+                logger.info("EDT took ${latency}ms to respond, dirty check of ${project.name} would have given up")
+            }
+            probing.set(false)
+        }, project.disposed)
+    }
+}
@@ -0,0 +1,184 @@
+package com.ypwang.plugin
+
+import com.google.common.hash.Hashing
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.fileEditor.FileEditorManager
+import com.intellij.openapi.project.ProjectManager
+import com.intellij.psi.PsiManager
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.*
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+
+// reverse-import index of project packages, so a change of a package reaches its dependents
+// type-checking linters (staticcheck, unused, errcheck...) report differently once a dependency changes
+// edges are learned from imports of packages as they're hashed (annotated / prefilled), import paths are resolved to dirs thru go.mod
+object GoImportGraph {
+    private class Module(val dir: Path, val path: String)
+
+    // package dir <> module it belongs to, empty if not in a module
+    private val modules = ConcurrentHashMap<String, Optional<Module>>()
+    // module dir <> hash of go.mod & go.sum
+    private val moduleHashes = ConcurrentHashMap<String, Long>()
+    // package dir <> (content hash, in-project package dirs it imports)
+    private val dependencies = ConcurrentHashMap<String, Pair<Long, Set<String>>>()
+    // package dir <> package dirs importing it
+    private val dependents = ConcurrentHashMap<String, MutableSet<String>>()
+
+    fun moduleChanged(moduleDir: String) {
+        moduleHashes.remove(moduleDir)
+        // module path might be changed, or a new module is added
+        modules.clear()
+        dependencies.clear()
+        dependents.clear()
+    }
+
+    // drop everything known of package dirs under root, on project close
+    fun forget(root: String) {
+        val prefix = Paths.get(root)
+        val under = { dir: String -> Paths.get(dir).startsWith(prefix) }
+        modules.keys.removeIf(under)
+        moduleHashes.keys.removeIf(under)
+        dependencies.keys.removeIf(under)
+        dependents.keys.removeIf(under)
+        dependents.values.forEach { it.removeIf(under) }
+    }
+
+    private fun moduleOf(dir: String): Module? =
+        modules.computeIfAbsent(dir) {
+            var cur: Path? = Paths.get(dir)
+            while (cur != null) {
+                val goMod = cur.resolve("go.mod")
+                if (Files.isRegularFile(goMod)) {
+                    val moduleDir: Path = cur
+                    return@computeIfAbsent Optional.ofNullable(modulePath(goMod)?.let { Module(moduleDir, it) })
+                }
+                cur = cur.parent
+            }
+            Optional.empty()
+        }.orElse(null)
+
+    // dir of the module the package dir belongs to, null if not in a module
+    fun moduleDir(dir: String): Path? = moduleOf(dir)?.dir
+
+    // module github.com/foo/bar // comment
+    private fun modulePath(goMod: Path): String? =
+        try {
+            Files.readAllLines(goMod)
+                .map { it.substringBefore("//").trim() }
+                .firstOrNull { it.startsWith("module ") }
+                ?.removePrefix("module ")?.trim()?.trim('"')
+        } catch (e: IOException) {
+            null
+        }
+
+    private fun moduleHash(module: Module): Long =
+        moduleHashes.computeIfAbsent(module.dir.toString()) {
+            val hasher = Hashing.murmur3_128().newHasher()
+            for (name in listOf("go.mod", "go.sum")) {
+                try {
+                    hasher.putBytes(Files.readAllBytes(module.dir.resolve(name)))
+                } catch (e: IOException) {
+                    // no go.sum without dependency
+                }
+                hasher.putByte(0)
+            }
+            hasher.hash().asLong()
+        }
+
+    // resolve import path to package dir, in the module of importer or any module seen so far, longest module path wins
+    // std & third party packages are not in project, not resolved
+    private fun resolve(importPath: String, importer: Module?): String? {
+        val candidates = (listOfNotNull(importer) + modules.values.mapNotNull { it.orElse(null) }).distinctBy { it.dir }
+        val module = candidates
+            .filter { importPath == it.path || importPath.startsWith(it.path + "/") }
+            .maxByOrNull { it.path.length }
+            ?: return null
+
+        val dir = module.dir.resolve(importPath.removePrefix(module.path).trimStart('/')).normalize()
+        return dir.takeIf { Files.isDirectory(it) }?.toString()
+    }
+
+    // in-project dependencies of package, resolved again only when the package content changes
+    private fun dependenciesOf(dir: String, contentHash: Long): Set<String> {
+        dependencies[dir]?.let { (hash, deps) -> if (hash == contentHash) return deps }
+
+        val module = moduleOf(dir)
+        val deps = GoPackageChangeTracker.imports(dir).mapNotNullTo(mutableSetOf()) { resolve(it, module) }.apply { remove(dir) }
+        val previous = dependencies.put(dir, contentHash to deps)?.second ?: setOf()
+        for (removed in previous - deps)
+            dependents[removed]?.remove(dir)
+        for (added in deps - previous)
+            dependents.computeIfAbsent(added) { ConcurrentHashMap.newKeySet() }.add(dir)
+        return deps
+    }
+
+    // import path of package if in a module, so the hash doesn't depend on where the repo is checked out
+    private fun identity(dir: String): String =
+        moduleOf(dir)?.let { "${it.path}/${it.dir.relativize(Paths.get(dir)).joinToString("/")}" } ?: dir
+
+    // combined hash of the package and all its in-project dependencies, transitively, and go.mod & go.sum of their modules
+    // a result computed against the same hash is still valid, in any clone / worktree of the repo
+    fun dependencyHash(dir: String): Long {
+        // package dir <> content hash, sorted to be order independent
+        val hashes = TreeMap<String, Long>()
+        val stack = ArrayDeque<String>().apply { push(dir) }
+        while (stack.isNotEmpty()) {
+            val cur = stack.pop()
+            if (cur in hashes)
+                continue
+
+            val hash = GoPackageChangeTracker.contentHash(cur)
+            hashes[cur] = hash
+            dependenciesOf(cur, hash).forEach { if (it !in hashes) stack.push(it) }
+        }
+
+        val hasher = Hashing.murmur3_128().newHasher()
+        for ((d, hash) in hashes)
+            hasher.putString(identity(d), Charsets.UTF_8).putLong(hash)
+        hashes.keys.mapNotNullTo(mutableSetOf()) { moduleOf(it)?.let(::moduleHash) }.sorted().forEach { hasher.putLong(it) }
+        return hasher.hash().asLong()
+    }
+
+    // package dirs depending on any of the dirs, transitively, known from packages hashed so far
+    fun dependentsOf(dirs: Set<String>): Set<String> {
+        val found = mutableSetOf<String>()
+        val stack = ArrayDeque(dirs)
+        while (stack.isNotEmpty()) {
+            for (dependent in dependents[stack.pop()] ?: continue) {
+                if (dependent !in dirs && found.add(dependent))
+                    stack.push(dependent)
+            }
+        }
+        return found
+    }
+
+    // restart highlighting of open files in dependents of changed packages, for projects opted in
+    // their cached results no longer match by dependency hash, so they're linted again
+    fun relintDependents(changedDirs: Set<String>) {
+        val projects = ProjectManager.getInstance().openProjects.filter { !it.isDisposed && GoLinterSettings.getInstance(it).relintDependents }
+        if (projects.isEmpty())
+            return
+
+        val affected = dependentsOf(changedDirs)
+        if (affected.isEmpty())
+            return
+
+        ApplicationManager.getApplication().invokeLater {
+            for (project in projects) {
+                if (project.isDisposed)
+                    continue
+
+                val psiManager = PsiManager.getInstance(project)
+                for (file in FileEditorManager.getInstance(project).openFiles) {
+                    if (file.parent?.path?.let { Paths.get(it).toString() } in affected)
+                        psiManager.findFile(file)?.let { DaemonCodeAnalyzer.getInstance(project).restart(it) }
+                }
+            }
+        }
+    }
+}
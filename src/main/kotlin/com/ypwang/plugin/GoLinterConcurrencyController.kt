@@ -0,0 +1,63 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.project.Project
+import java.lang.management.ManagementFactory
+
+// adaptive `-j` of golangci-lint, AIMD feedback loop on every completed run
+// additive increase while the machine is quiet, multiplicative decrease on congestion:
+// IDE indexing, load average above core count, backlog deeper than running slots, or a run much slower than usual
+// the static concurrency setting is the upper bound
+object GoLinterConcurrencyController {
+    private const val Alpha = 0.3               // EWMA weight of the latest latency
+    private const val SlowdownRatio = 1.5
+    private const val QuietLoad = 0.7
+    private const val MaxLatencies = 256
+
+    // invocation fingerprint of a single target <> EWMA of run latency (ms), least recently run dropped first
+    // guarded by the controller's monitor
+    private val latency = object : LinkedHashMap<String, Double>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Double>?): Boolean = size > MaxLatencies
+    }
+    // 0: no feedback yet, start from upper bound
+    @Volatile private var current = 0
+
+    fun jobs(settings: GoLinterSettings): Int {
+        val bound = maxOf(1, settings.concurrency)
+        if (!settings.adaptiveConcurrency)
+            return bound
+
+        return current.takeIf { it > 0 }?.coerceAtMost(bound) ?: bound
+    }
+
+    @Synchronized
+    fun feedback(project: Project, settings: GoLinterSettings, invocation: LintInvocation, jobs: Int, duration: Long) {
+        if (!settings.adaptiveConcurrency)
+            return
+
+        // a coalesced run lints a combination of packages that hardly ever repeats, no history to compare with
+        val ratio =
+            if (invocation.coalesced) 1.0
+            else {
+                val previous = latency[invocation.fingerprint]
+                latency[invocation.fingerprint] = previous?.let { it * (1 - Alpha) + duration * Alpha } ?: duration.toDouble()
+                previous?.let { duration / it } ?: 1.0
+            }
+
+        val cores = Runtime.getRuntime().availableProcessors()
+        // not available on Windows
+        val load = ManagementFactory.getOperatingSystemMXBean().systemLoadAverage.let { if (it < 0) it else it / cores }
+        val queued = GoLinterExecutionPool.queuedCount
+        val congested = DumbService.isDumb(project) || load > 1.0 || ratio > SlowdownRatio || queued > GoLinterExecutionPool.activeCount
+
+        val next = when {
+            congested -> maxOf(1, jobs / 2)
+            load < QuietLoad && queued == 0 -> minOf(maxOf(1, settings.concurrency), jobs + 1)
+            else -> jobs
+        }
+
+        if (next != current)
+            logger.debug("golangci-lint -j adjusted $current -> $next, load: $load, queued: $queued, latency ratio: $ratio")
+        current = next
+    }
+}
@@ -0,0 +1,211 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.application.PathManager
+import com.ypwang.plugin.model.InlineFix
+import com.ypwang.plugin.model.LineRange
+import com.ypwang.plugin.model.LintIssue
+import com.ypwang.plugin.model.Position
+import com.ypwang.plugin.model.Replacement
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+
+// lint results on disk, survive IDE restarts
+// one file per package result under IDE system dir, named by portable invocation fingerprint + dependency hash
+// content addressed, so clones / worktrees of the same repo share entries
+// size bounded by settings, least recently used files are removed first
+object GoLinterDiskCache {
+    private const val Magic = 0x474c5233      // GLR3, line fingerprint changed since GLR2
+    private const val MiB = 1024L * 1024
+    private const val TmpSuffix = ".tmp"
+
+    private val dir: Path by lazy { Paths.get(PathManager.getSystemPath(), "go-linter", "results") }
+    // bytes on disk, -1: not counted yet
+    private var size = -1L
+
+    // root: project path in running OS format
+    fun key(invocation: LintInvocation, root: String, contentHash: Long): String =
+        LintInvocation.hash(invocation.portableFingerprint(root), contentHash.toString())
+
+    // reported filename <> issues, null if not found or unreadable
+    fun get(settings: GoLinterSettings, key: String): Map<String, List<LintIssue>>? {
+        if (settings.persistentCacheSize <= 0)
+            return null
+
+        val file = dir.resolve(key)
+        if (!Files.isRegularFile(file))
+            return null
+
+        return try {
+            // entries are small, read to heap; a mapped file can't be replaced or deleted on Windows until GC unmaps it
+            val files = read(ByteBuffer.wrap(Files.readAllBytes(file)))
+            // recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()))
+            files
+        } catch (e: Exception) {
+            // corrupted or half written by a crashed IDE, drop it
+            logger.info("Unreadable lint result $file", e)
+            try {
+                Files.deleteIfExists(file)
+            } catch (_: IOException) {
+                // in use, eviction gets it later
+            }
+            null
+        }
+    }
+
+    fun put(settings: GoLinterSettings, key: String, files: Map<String, List<LintIssue>>) {
+        val budget = settings.persistentCacheSize * MiB
+        if (budget <= 0)
+            return
+
+        try {
+            Files.createDirectories(dir)
+            // write aside then move, a reader never sees a partial file
+            val tmp = Files.createTempFile(dir, key, TmpSuffix)
+            try {
+                DataOutputStream(BufferedOutputStream(Files.newOutputStream(tmp))).use { write(it, files) }
+                val target = dir.resolve(key)
+                val replaced = if (Files.exists(target)) Files.size(target) else 0
+                val written = Files.size(tmp)
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+                evict(budget, written - replaced)
+            } finally {
+                Files.deleteIfExists(tmp)
+            }
+        } catch (e: IOException) {
+            logger.info("Failed to store lint result", e)
+        }
+    }
+
+    // entry files with size & modified time, temp files of puts in progress left out, files gone meanwhile too
+    private fun entries(): List<Triple<Path, Long, Long>> =
+        Files.list(dir).use { stream -> stream.toList() }
+            .filter { !it.fileName.toString().endsWith(TmpSuffix) }
+            .mapNotNull {
+                try {
+                    val attrs = Files.readAttributes(it, BasicFileAttributes::class.java)
+                    Triple(it, attrs.size(), attrs.lastModifiedTime().toMillis())
+                } catch (e: IOException) {
+                    null
+                }
+            }
+
+    @Synchronized
+    private fun evict(budget: Long, added: Long) {
+        if (size < 0)
+            size = entries().sumOf { it.second }
+        else
+            size += added
+
+        if (size <= budget)
+            return
+
+        // down to 80% of budget, so not every put triggers eviction
+        for ((file, fileSize, _) in entries().sortedBy { it.third }) {
+            if (size <= budget * 4 / 5)
+                break
+            try {
+                if (Files.deleteIfExists(file))
+                    size -= fileSize
+            } catch (e: IOException) {
+                // being read, next eviction gets it
+            }
+        }
+    }
+
+    // format: magic, file count, per file: name, issue count, issues (source lines as fingerprint)
+    // string: byte length + UTF-8 bytes, nullable value: a presence byte ahead
+    internal fun write(out: DataOutputStream, files: Map<String, List<LintIssue>>) {
+        fun string(s: String) {
+            val bytes = s.toByteArray(Charsets.UTF_8)
+            out.writeInt(bytes.size)
+            out.write(bytes)
+        }
+
+        fun strings(list: List<String>?) {
+            out.writeInt(list?.size ?: -1)
+            list?.forEach(::string)
+        }
+
+        out.writeInt(Magic)
+        out.writeInt(files.size)
+        for ((filename, issues) in files) {
+            string(filename)
+            out.writeInt(issues.size)
+            for (issue in issues) {
+                string(issue.FromLinter)
+                string(issue.Text)
+                out.writeInt(issue.Pos.Offset)
+                out.writeInt(issue.Pos.Line)
+                out.writeInt(issue.Pos.Column)
+                // only the fingerprint of source line is needed
+                val sourceHash = issue.sourceHash
+                out.writeBoolean(sourceHash != null)
+                sourceHash?.let { out.writeLong(it) }
+                out.writeBoolean(issue.Replacement != null)
+                issue.Replacement?.let { replacement ->
+                    out.writeBoolean(replacement.NeedOnlyDelete)
+                    strings(replacement.NewLines)
+                    out.writeBoolean(replacement.Inline != null)
+                    replacement.Inline?.let {
+                        out.writeInt(it.StartCol)
+                        out.writeInt(it.Length)
+                        string(it.NewString)
+                    }
+                }
+                out.writeBoolean(issue.LineRange != null)
+                issue.LineRange?.let {
+                    out.writeInt(it.From)
+                    out.writeInt(it.To)
+                }
+            }
+        }
+    }
+
+    internal fun read(buffer: ByteBuffer): Map<String, List<LintIssue>> {
+        fun string(): String {
+            val bytes = ByteArray(buffer.int)
+            buffer.get(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        fun strings(): List<String>? {
+            val count = buffer.int
+            return if (count < 0) null else List(count) { string() }
+        }
+
+        fun boolean(): Boolean = buffer.get() != 0.toByte()
+
+        if (buffer.int != Magic)
+            throw IOException("bad format")
+
+        val files = LinkedHashMap<String, List<LintIssue>>()
+        repeat(buffer.int) {
+            val filename = string()
+            files[filename] = List(buffer.int) {
+                val fromLinter = string()
+                val text = string()
+                val pos = Position(filename, buffer.int, buffer.int, buffer.int)
+                val sourceHash = if (boolean()) buffer.long else null
+                val replacement =
+                    if (boolean()) {
+                        val needOnlyDelete = boolean()
+                        val newLines = strings()
+                        val inline = if (boolean()) InlineFix(buffer.int, buffer.int, string()) else null
+                        Replacement(needOnlyDelete, newLines, inline)
+                    } else null
+                val lineRange = if (boolean()) LineRange(buffer.int, buffer.int) else null
+                LintIssue(fromLinter, text, pos, null, replacement, lineRange, sourceHash)
+            }
+        }
+        return files
+    }
+}
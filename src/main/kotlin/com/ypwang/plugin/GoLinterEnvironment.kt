@@ -0,0 +1,29 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ProjectRootManager
+import com.ypwang.plugin.form.GoLinterConfigurable
+import com.ypwang.plugin.platform.Platform
+
+// env of lint runs (PATH, GOPATH, GO111MODULE) per project, collected from SDK & Go settings, costly on WSL
+// evaluated again once project roots change (SDK, GOPATH, modules integration), or after settings saved
+class GoLinterEnvironment(private val project: Project) {
+    companion object {
+        @JvmStatic
+        fun getInstance(project: Project): GoLinterEnvironment = project.service()
+    }
+
+    private var env: Map<String, String> = mapOf()
+    private var envKey: List<Any>? = null
+
+    @Synchronized
+    fun get(platform: Platform, vars: List<String>): Map<String, String> {
+        val key = listOf(platform.javaClass, vars, ProjectRootManager.getInstance(project).modificationCount, GoLinterConfigurable.getLastSavedTime())
+        if (key != envKey) {
+            env = platform.getEnvMap(vars)
+            envKey = key
+        }
+        return env
+    }
+}
@@ -0,0 +1,395 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressIndicator
+import com.ypwang.plugin.model.LintRunResult
+import com.ypwang.plugin.model.RunProcessResult
+import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+// the file the user is looking at goes first, batch inspection last
+enum class LintPriority {
+    FOCUSED,        // file in the focused editor
+    VISIBLE,        // file in other visible editors (split view)
+    OPEN,           // file opened in a hidden tab
+    BACKGROUND      // not opened, batch inspection, background tasks
+}
+
+// IDE wide pool of golangci-lint executions
+// Intellij create different instances for multiple projects, so the pool must be shared
+// 1. single-flight: identical invocations (by fingerprint) in flight share one future, never spawn duplicate processes
+// 2. admission: at most `capacity` processes run at the same time, the rest wait for a slot by priority
+// 3. cancellation: a run is killed once its package changed again, or all highlighting passes waiting on it are cancelled
+// 4. debounce: requests of a package arriving within a short window (save bursts) are collapsed into one run
+// 5. coalescing: queued packages sharing running dir & settings are linted by one process, `golangci-lint run dirA dirB ...`
+object GoLinterExecutionPool {
+    private const val MaxDebounceExtend = 4
+    // max time (ms) the focused editor waits behind other work
+    private const val MaxFocusedWait = 2000L
+    // max packages linted by one process
+    private const val MaxCoalesce = 16
+
+    private enum class Admission {
+        SLOT,       // got a slot within capacity
+        BURST,      // got the burst slot
+        MERGED      // linted as part of other's run
+    }
+
+    // most urgent first, then FIFO
+    private class Turn(val flight: Flight, var priority: LintPriority, val sequence: Long) : Comparable<Turn> {
+        val future = CompletableFuture<Admission>()
+        val enqueued = System.currentTimeMillis()
+
+        override fun compareTo(other: Turn): Int =
+            compareValuesBy(this, other, { it.priority }, { it.sequence })
+    }
+
+    private class Flight(val invocation: LintInvocation, val packageDir: String, var priority: LintPriority, private val window: Long) {
+        val future = CompletableFuture<LintRunResult>()
+        // waiting for a slot in backlog, guarded by pool lock
+        var turn: Turn? = null
+        // other flights linted by this flight's run, guarded by pool lock until the run starts
+        val merged = mutableListOf<Flight>()
+        private val indicators = ConcurrentLinkedQueue<ProgressIndicator>()
+        // some waiter is not bound to any indicator, only package change can cancel the run
+        @Volatile private var unbound = false
+
+        // debounce: the run starts after `window` ms quiet, every request arriving in between postpones it
+        // bounded, so a steady stream of saves can't starve the run
+        private val firstArrival = System.currentTimeMillis()
+        @Volatile var deadline = firstArrival + window
+            private set
+        @Volatile private var generation = GoPackageChangeTracker.generation(packageDir)
+        private var started = false
+        // decided to be killed, nobody joins anymore; joining & the decision are under the flight's monitor
+        private var dropped = false
+
+        fun join(indicator: ProgressIndicator?) {
+            if (indicator == null) unbound = true
+            else indicators.add(indicator)
+        }
+
+        // join a request if the run is still of use to it, false if it's about to be killed or computing stale content
+        // still debouncing: collapse into this run, adopt the latest package content
+        @Synchronized
+        fun tryJoin(indicator: ProgressIndicator?): Boolean {
+            if (dropped)
+                return false
+
+            if (!started) {
+                generation = GoPackageChangeTracker.generation(packageDir)
+                deadline = minOf(System.currentTimeMillis() + window, firstArrival + window * MaxDebounceExtend)
+            } else if (superseded)
+                return false
+
+            // an abandoned run not dropped yet is kept alive by the new waiter
+            join(indicator)
+            return true
+        }
+
+        // drop the flight if all its waiters are gone
+        @Synchronized
+        fun abandon(): Boolean {
+            if (!dropped && abandoned)
+                dropped = true
+            return dropped
+        }
+
+        // drop the flight if nobody is interested in the result anymore
+        @Synchronized
+        fun cancel(): Boolean {
+            if (!dropped && cancelled)
+                dropped = true
+            return dropped
+        }
+
+        // the process reads package content as of now
+        @Synchronized
+        fun start() {
+            started = true
+            generation = GoPackageChangeTracker.generation(packageDir)
+        }
+
+        val superseded: Boolean
+            get() = GoPackageChangeTracker.generation(packageDir) != generation
+
+        // all highlighting passes waiting on it are cancelled
+        val abandoned: Boolean
+            get() = !unbound && indicators.all { it.isCanceled }
+
+        // nobody is interested in the result anymore
+        val cancelled: Boolean
+            get() = superseded || abandoned
+    }
+
+    private val inFlight = ConcurrentHashMap<String, Flight>()
+    // fingerprint <> CPU time (ms) of last completed run, to estimate CPU saved by cancellation
+    private val cpuHistory = ConcurrentHashMap<String, Long>()
+    // package dir <> wall time (ms) of last completed run, to adapt the debounce window
+    private val durations = ConcurrentHashMap<String, Long>()
+
+    private val lock = ReentrantLock()
+    private var capacity = 1
+    private var active = 0
+    // one extra slot beyond capacity, reserved for the focused editor waited too long
+    private var burstActive = false
+    private var sequence = 0L
+    private val backlog = PriorityQueue<Turn>()
+
+    val activeCount: Int
+        get() = lock.withLock { active + if (burstActive) 1 else 0 }
+
+    val queuedCount: Int
+        get() = lock.withLock { backlog.size }
+
+    // each golangci-lint run takes up to `-j` cores, don't exceed the core count in total
+    // sized by the static concurrency setting, adaptive `-j` shrinks under congestion, when admitting more runs is the last thing wanted
+    fun slots(settings: GoLinterSettings): Int =
+        if (settings.maxParallelRuns > 0) settings.maxParallelRuns
+        else maxOf(1, Runtime.getRuntime().availableProcessors() / maxOf(1, settings.concurrency))
+
+    // a slow package deserves a longer wait to collapse more saves, up to MaxDebounceExtend times of the setting
+    private fun debounceWindow(packageDir: String, settings: GoLinterSettings): Long {
+        val base = settings.debounceWindow.toLong()
+        if (base <= 0)
+            return 0
+
+        return (durations[packageDir]?.let { it / 10 } ?: base).coerceIn(base, base * MaxDebounceExtend)
+    }
+
+    // packageDir: host OS path of the linted package, to detect supersession
+    // task:       run the process, kill it once `cancelled` turns true
+    fun execute(
+        invocation: LintInvocation,
+        packageDir: String,
+        indicator: ProgressIndicator?,
+        priority: LintPriority,
+        settings: GoLinterSettings,
+        task: (invocation: LintInvocation, cancelled: () -> Boolean) -> RunProcessResult
+    ): LintRunResult =
+        execute(invocation, packageDir, indicator, priority, slots(settings), debounceWindow(packageDir, settings), task)
+
+    // slots: pool capacity as of now; window: debounce window (ms) of the package
+    internal fun execute(
+        invocation: LintInvocation,
+        packageDir: String,
+        indicator: ProgressIndicator?,
+        priority: LintPriority,
+        slots: Int,
+        window: Long,
+        task: (invocation: LintInvocation, cancelled: () -> Boolean) -> RunProcessResult
+    ): LintRunResult {
+        val key = invocation.fingerprint
+        val mine = Flight(invocation, packageDir, priority, window).apply { join(indicator) }
+        while (true) {
+            val shared = inFlight.putIfAbsent(key, mine) ?: break
+            if (shared.tryJoin(indicator)) {
+                // same invocation is on the way, wait for its result
+                promote(shared, priority)
+                return await(shared.future, indicator)
+            }
+
+            // the running one is computing stale content, or abandoned, and about to be killed, take over
+            if (inFlight.replace(key, shared, mine))
+                break
+        }
+
+        // merged flight is completed by others, clean up once done whoever completes it
+        mine.future.whenComplete { _, _ -> inFlight.remove(key, mine) }
+        try {
+            debounce(mine)
+            val admission = acquire(mine, slots)
+            if (admission != Admission.MERGED) {
+                try {
+                    run(mine, task)
+                } finally {
+                    release(admission == Admission.BURST)
+                }
+            }
+        } catch (e: RunCancelledException) {
+            logCancelled(key, packageDir, e.cpuTime)
+            mine.future.completeExceptionally(ProcessCanceledException())
+        } catch (e: Throwable) {
+            mine.future.completeExceptionally(e)
+        }
+
+        return await(mine.future, indicator)
+    }
+
+    private fun logCancelled(key: String, packageDir: String, cpuTime: Long) {
+        val saved = cpuHistory[key]?.let { "~${maxOf(0, it - cpuTime)}ms" } ?: "unknown"
+        logger.info("Cancelled golangci-lint run for $packageDir after ${cpuTime}ms CPU, CPU saved: $saved")
+    }
+
+    // run the owner flight together with those merged into it, split the report back per target dir
+    private fun run(owner: Flight, task: (invocation: LintInvocation, cancelled: () -> Boolean) -> RunProcessResult) {
+        val flights = listOf(owner) + owner.merged
+        val invocation =
+            if (flights.size == 1) owner.invocation
+            else owner.invocation.withTargets(flights.map { it.invocation.target })
+
+        if (flights.size > 1)
+            logger.debug("Coalesced ${flights.size} packages into one golangci-lint run: ${invocation.parameters.takeLast(flights.size)}")
+
+        try {
+            val start = System.currentTimeMillis()
+            // only kill the process if nobody is interested in any of the packages
+            val result = parseLintRunResult(task(invocation) { flights.all { it.cancelled } && flights.all { it.cancel() } })
+            val duration = System.currentTimeMillis() - start
+            // group order is kept, files of a target stay in filename order
+            val byTarget = result.files?.entries
+                ?.groupBy { reportedDir(it.key) }
+                ?.mapValues { (_, files) -> files.associate { it.toPair() } }
+            // time & CPU of a coalesced run are of all its packages together, tell nothing of one
+            if (flights.size == 1) {
+                durations[owner.packageDir] = duration
+                if (result.process.cpuTime > 0)
+                    cpuHistory[owner.invocation.fingerprint] = result.process.cpuTime
+            }
+            for (flight in flights) {
+
+                when {
+                    // package changed while running, the result is stale
+                    flight.superseded -> flight.future.completeExceptionally(ProcessCanceledException())
+                    // a pattern target (`./...`) reports many dirs, never merged, the report is its own
+                    byTarget == null || !flight.invocation.isPackageTarget -> flight.future.complete(result)
+                    else -> flight.future.complete(LintRunResult(byTarget[flight.invocation.target] ?: mapOf(), result.process))
+                }
+            }
+        } catch (e: RunCancelledException) {
+            flights.forEach { logCancelled(it.invocation.fingerprint, it.packageDir, e.cpuTime / flights.size) }
+            flights.forEach { it.future.completeExceptionally(ProcessCanceledException()) }
+        } catch (e: Throwable) {
+            flights.forEach { it.future.completeExceptionally(e) }
+        }
+    }
+
+    private fun debounce(flight: Flight) {
+        while (true) {
+            val remain = flight.deadline - System.currentTimeMillis()
+            if (remain <= 0)
+                break
+            // package change during debounce is fine, the run hasn't read anything yet
+            if (flight.abandon())
+                throw RunCancelledException(0)
+            Thread.sleep(minOf(remain, 50))
+        }
+
+        flight.start()
+    }
+
+    // wait for the result, stop waiting once the highlighting pass is cancelled
+    private fun await(future: CompletableFuture<LintRunResult>, indicator: ProgressIndicator?): LintRunResult {
+        while (true) {
+            try {
+                return future.get(100, TimeUnit.MILLISECONDS)
+            } catch (e: TimeoutException) {
+                indicator?.checkCanceled()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        }
+    }
+
+    // promote the queued turn of a flight if a more urgent request joins it
+    private fun promote(flight: Flight, priority: LintPriority) {
+        lock.withLock {
+            if (priority >= flight.priority)
+                return
+
+            flight.priority = priority
+            val turn = flight.turn ?: return
+            if (backlog.remove(turn)) {
+                turn.priority = priority
+                backlog.add(turn)
+            }
+        }
+    }
+
+    private fun acquire(flight: Flight, slots: Int): Admission {
+        val turn = lock.withLock {
+            capacity = slots
+            if (active < capacity) {
+                // free slot, run immediately
+                active++
+                coalesce(flight)
+                return Admission.SLOT
+            }
+
+            Turn(flight, flight.priority, sequence++).also {
+                flight.turn = it
+                backlog.add(it)
+                logger.debug("golangci-lint pool busy: $active running, ${backlog.size} queued")
+            }
+        }
+
+        // slot guaranteed once turn completed
+        while (true) {
+            try {
+                return turn.future.get(100, TimeUnit.MILLISECONDS)
+            } catch (e: TimeoutException) {
+                // once merged, the flight is cancelled by the run it merged into
+                if (!turn.future.isDone && flight.cancel()) {
+                    // slot might be just turned over to us, give it back
+                    if (lock.withLock { backlog.remove(turn) })
+                        throw RunCancelledException(0)
+                }
+
+                // bounded wait for the focused editor: preempt bulk work by a burst slot beyond capacity
+                if (turn.priority == LintPriority.FOCUSED && System.currentTimeMillis() - turn.enqueued > MaxFocusedWait) {
+                    val burst = lock.withLock {
+                        if (burstActive || !backlog.remove(turn)) false
+                        else {
+                            burstActive = true
+                            coalesce(flight)
+                            true
+                        }
+                    }
+                    if (burst)
+                        return Admission.BURST
+                }
+            }
+        }
+    }
+
+    // take queued flights with same running dir & settings along, they're linted in one process
+    // pattern targets (project wide `./...`) are neither merged into others nor take others along
+    // must hold the pool lock
+    private fun coalesce(owner: Flight) {
+        if (!owner.invocation.isPackageTarget)
+            return
+
+        val base = owner.invocation.baseFingerprint
+        val candidates = backlog.filter { it.flight.invocation.isPackageTarget && it.flight.invocation.baseFingerprint == base }.sorted().take(MaxCoalesce - 1)
+        for (turn in candidates) {
+            backlog.remove(turn)
+            owner.merged.add(turn.flight)
+            turn.future.complete(Admission.MERGED)
+        }
+    }
+
+    // turn over the slot to backlog by priority if there's any, or release it
+    private fun release(burst: Boolean) {
+        val next = mutableListOf<Turn>()
+        lock.withLock {
+            if (burst) burstActive = false
+            else active--
+            // capacity might be enlarged by other projects, wake up as many as possible
+            while (active < capacity && backlog.isNotEmpty()) {
+                val turn = backlog.poll()
+                coalesce(turn.flight)
+                next.add(turn)
+                active++
+            }
+        }
+
+        next.forEach { it.future.complete(Admission.SLOT) }
+    }
+}
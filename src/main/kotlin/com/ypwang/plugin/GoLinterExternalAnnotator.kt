@@ -1,9 +1,8 @@
 package com.ypwang.plugin
 
 import com.goide.configuration.GoSdkConfigurable
-import com.goide.project.GoModuleSettings
 import com.goide.psi.GoFile
-import com.google.gson.Gson
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer
 import com.intellij.codeInsight.intention.IntentionAction
 import com.intellij.lang.annotation.AnnotationHolder
 import com.intellij.lang.annotation.ExternalAnnotator
@@ -13,81 +12,49 @@ import com.intellij.notification.NotificationListener
 import com.intellij.notification.NotificationType
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.fileEditor.FileDocumentManager
 import com.intellij.openapi.fileEditor.FileEditorManager
 import com.intellij.openapi.fileEditor.OpenFileDescriptor
 import com.intellij.openapi.module.ModuleUtilCore
 import com.intellij.openapi.options.ShowSettingsUtil
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Key
 import com.intellij.openapi.util.TextRange
 import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.psi.PsiDocumentManager
 import com.intellij.psi.PsiFile
-import com.intellij.util.containers.SLRUMap
-import com.jetbrains.rd.util.first
+import com.intellij.psi.PsiManager
+import com.intellij.psi.SmartPointerManager
 import com.ypwang.plugin.form.GoLinterConfigurable
 import com.ypwang.plugin.handler.DefaultHandler
+import com.ypwang.plugin.handler.LazySuggestedFixes
 import com.ypwang.plugin.model.LintIssue
-import com.ypwang.plugin.model.LintReport
-import com.ypwang.plugin.model.RunProcessResult
 import com.ypwang.plugin.platform.Platform
 import com.ypwang.plugin.platform.Platform.Companion.platformFactory
 import java.io.File
 import java.nio.charset.Charset
+import java.nio.file.Path
 import java.nio.file.Paths
-import java.util.*
-import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
-import java.util.concurrent.locks.Condition
-import java.util.concurrent.locks.ReentrantLock
-import kotlin.concurrent.withLock
-
-private class GoLinterWorkLoad {
-    val executionMutex = ReentrantLock()
-    val executionCondition: Condition = executionMutex.newCondition()
-    val broadcastMutex = ReentrantLock()
-    val broadcastCondition: Condition = broadcastMutex.newCondition()
-    var result: RunProcessResult? = null
-}
 
 class GoLinterExternalAnnotator : ExternalAnnotator<PsiFile, GoLinterExternalAnnotator.Result>() {
     companion object {
         private const val ErrorTitle = "Go linter running error"
         private const val notificationFrequencyCap = 60 * 1000L
-
-        // Intellij create different instances for multiple projects
-        // limit golangci-lint concurrency, save CPU resource
-        // consumer queue
-        private val executionLock = AtomicBoolean(false)
-        private val workloadsLock = ReentrantLock()
-        private val workLoads = LinkedHashMap<String, GoLinterWorkLoad>()
+        // annotations built by last pass over the document
+        private val memoKey = Key.create<Memo>("go-linter.annotations")
     }
 
     // reduce error show freq
     private var showError = true
     private var notificationLastTime = AtomicLong(-1)
 
-    // cache config search to save time
-    private var customConfig: Optional<String> = Optional.empty()
-    private var customConfigLastCheckTime = AtomicLong(-1)
-    private fun customConfigDetected(path: String): Optional<String> =
-        // cache the result max 1min
-        System.currentTimeMillis().let {
-            if (customConfigLastCheckTime.get() + 60000 < it || customConfigLastCheckTime.get() < GoLinterConfigurable.getLastSavedTime()) {
-                customConfig = findCustomConfigInPath(path)
-                customConfigLastCheckTime.set(it)
-            }
-
-            customConfig
-        }
-
-    // cache module <> (timestamp, issues)
-    /** Intellij share memory between instances
-     *  If multiple projects are opened, this plugin will cache a lot issues and eventually eat up all memory, slow down the IDE
-     *  use LRU map to reduce memory usage
-     */
-    private val cache = SLRUMap<String, Pair<Long, List<LintIssue>>>(23, 19)
-
-    data class Result(val matchName: String, val annotations: List<LintIssue>)
+    // annotations: issues of the file only, sorted by line
+    // snapshot: line snapshot of the file the issues are computed against, null if unknown
+    data class Result(val matchName: String, val annotations: List<LintIssue>, val snapshot: IntArray?)
 
     override fun getPairedBatchInspectionShortName(): String = GoLinterLocalInspection.SHORT_NAME
 
@@ -95,10 +62,12 @@ class GoLinterExternalAnnotator : ExternalAnnotator<PsiFile, GoLinterExternalAnn
         runReadAction {
             val project = file.project
             val platform = platformFactory(project)
+            val settings = GoLinterSettings.getInstance(project)
             if (file is GoFile && file.isValid && file.virtualFile != null &&
                 // valid linter executable or config file + linter in path
-                (platform.canExecute(GoLinterSettings.getInstance(project).goLinterExe) ||
-                        (customConfigDetected(project.basePath!!).isPresent && platform.defaultExecutable.isNotEmpty())))
+                // same path as doAnnotate, or the cached config flips back and forth between the two
+                (platform.canExecute(settings.goLinterExe) ||
+                        (GoLinterResultCache.getInstance(project).customConfig(settings.customProjectDir ?: project.basePath!!).isPresent && platform.defaultExecutable.isNotEmpty())))
                 file
             else
                 null
@@ -116,60 +85,87 @@ class GoLinterExternalAnnotator : ExternalAnnotator<PsiFile, GoLinterExternalAnn
             return null
 
         val platform = platformFactory(project)
-        // runningPath:  the golangci-lint running dir
-        // relativePath: the run target folder
-        // matchName:    the file to match the output lint, to work with WSL, match name must be converted to platform specified
-        val (runningPath, relativePath, matchName) =
-            if (settings.enableCustomProjectDir) {
-                Triple(
-                    projectPath.toString(),
-                    // the relative path of file's dir to running dir
-                    platform.convertToPlatformPath(projectPath.relativize(absolutePath.parent).toString().ifBlank { "." }),
-                    // the relative path of file to running dir
-                    platform.convertToPlatformPath(projectPath.relativize(absolutePath).toString())
-                )
-            } else {
-                Triple(
-                    absolutePath.parent.toString(),     // absolute file dir
-                    ".",
-                    absolutePath.fileName.toString()    // relative file name
+        val cache = GoLinterResultCache.getInstance(project)
+        val matchName = matchName(settings, platform, projectPath, absolutePath)
+
+        val invocation =
+            try {
+                LintInvocation.forPackage(
+                    platform,
+                    settings,
+                    ModuleUtilCore.findModuleForFile(file),
+                    cache.customConfig(settings.customProjectDir ?: project.basePath!!),
+                    projectPath,
+                    absolutePath.parent
                 )
+            } catch (e: Exception) {
+                // all linters disabled
+                return null
             }
 
-        // cachePath: the absolute path of file dir, as the cache key
-        val cachePath = absolutePath.parent.toString()
+        // packageDir: the absolute path of file dir
+        val packageDir = absolutePath.parent.toString()
+        // cacheKey: everything decides the output, settings / config / binary / build tags / package dir
+        val cacheKey = invocation.fingerprint
+        // line snapshots are read after the run, dropped if the package changed since now
+        val generation = GoPackageChangeTracker.generation(packageDir)
+        // taken before the run, a change during the run makes the result mismatch next time, never the other way
+        // dependencies count too, type-checking linters report differently once a dependency changes
+        val contentHash = GoImportGraph.dependencyHash(packageDir)
+        val fileName = absolutePath.fileName.toString()
+        // diskKey: same as cacheKey, but independent of where the repo is checked out
+        val diskKey = GoLinterDiskCache.key(invocation, platform.toRunningOSPath(projectPath.toString()), contentHash)
         run {
             // see if cached
-            val issueWithTTL = synchronized(cache) {
-                cache.get(cachePath)
+            val cached = cache.get(cacheKey)
+
+            // don't run linter when file is not saved, unless unsaved buffers are linted thru shadow workspace
+            // while if we have previous result, it's better than nothing to return those results
+            // issues not in dirty zone could still be useful
+            if (!isSaved(file)) {
+                if (settings.lintUnsaved)
+                    lintUnsaved(project, settings, platform, file, projectPath, absolutePath, matchName)?.let { return it }
+                return Result(matchName, cached?.files?.get(matchName) ?: listOf(), cached?.snapshots?.get(fileName))
+            }
+
+            // cached result is computed against same content of all files in the package & its dependencies
+            if (cached != null && cached.contentHash == contentHash)
+                return Result(matchName, cached.files[matchName] ?: listOf(), cached.snapshots[fileName])
+
+            // stored by a previous IDE session, or by another clone of the repo
+            GoLinterDiskCache.get(settings, diskKey)?.let {
+                val entry = GoLinterResultCache.Entry(System.currentTimeMillis(), contentHash, it, GoPackageChangeTracker.lineSnapshots(packageDir, generation, it))
+                cache.put(cacheKey, entry)
+                return Result(matchName, it[matchName] ?: listOf(), entry.snapshots[fileName])
             }
 
-            if (
-                // don't run linter when file is not saved
-                // while if we have previous result, it's better than nothing to return those results
-                // issues not in dirty zone could still be useful
-                !isSaved(file) ||
-                // cached result is newer than both last config saved time and this file's last modified time
-                (issueWithTTL != null && file.virtualFile.timeStamp < issueWithTTL.first && GoLinterConfigurable.getLastSavedTime() < issueWithTTL.first))
-                return Result(matchName, issueWithTTL?.second ?: listOf())
+            // hand out the outdated result right away, relocation in `apply` copes with the edits, and refresh in background
+            if (cached != null && settings.staleWhileRevalidate) {
+                refresh(project, settings, platform, invocation, packageDir, priorityOf(file), file.virtualFile.charset, contentHash, generation, diskKey, cached)
+                return Result(matchName, cached.files[matchName] ?: listOf(), cached.snapshots[fileName])
+            }
         }
 
         // cache not found or outdated
         // ====================================================================================================================================
         return try {
-            val issues = runAndProcessResult(
+            val files = runAndProcessResult(
                 project,
+                settings,
                 platform,
-                platform.toRunningOSPath(runningPath),
-                buildParameters(file, project, platform, settings, relativePath),
-                listOf(Const_Path, Const_GoPath, Const_GoModule),
+                invocation,
+                packageDir,
+                priorityOf(file),
                 file.virtualFile.charset
             )
-            synchronized(cache) {
-                cache.put(cachePath, System.currentTimeMillis() to issues)
-            }
-
-            Result(matchName, issues)
+            val entry = GoLinterResultCache.Entry(System.currentTimeMillis(), contentHash, files, GoPackageChangeTracker.lineSnapshots(packageDir, generation, files))
+            cache.put(cacheKey, entry)
+            GoLinterDiskCache.put(settings, diskKey, files)
+
+            Result(matchName, files[matchName] ?: listOf(), entry.snapshots[fileName])
+        } catch (e: ProcessCanceledException) {
+            // superseded by a newer change, or highlighting pass cancelled
+            throw e
         } catch (e: Exception) {
             null
         }
@@ -181,72 +177,33 @@ class GoLinterExternalAnnotator : ExternalAnnotator<PsiFile, GoLinterExternalAnn
         val fixes: Array<IntentionAction>
     )
 
+    // annotations are rebuilt only when the document is edited, or a different result (cache entry) comes
+    // caret moves, other inspections, focus changes restart highlighting with both the same, they replay
+    private class Memo(val stamp: Long, val issues: List<LintIssue>, val snapshot: IntArray?, val annos: List<Anno>)
+
     override fun apply(file: PsiFile, annotationResult: Result?, holder: AnnotationHolder) {
         if (annotationResult == null)
             return
 
         val settings = GoLinterSettings.getInstance(file.project)
         val document = PsiDocumentManager.getInstance(file.project).getDocument(file) ?: return
-        var lineShift = -1      // linter reported line is 1-based
-        var shiftCount = 0
-        val beforeDirtyZone = mutableListOf<Anno>()
-        val afterDirtyZone = mutableListOf<Anno>()
-        // issues is already sorted by #line
-        for (issue in annotationResult.annotations.filter { it.Pos.Filename == annotationResult.matchName }) {
-            var lineNumber = issue.Pos.Line + lineShift
-            if (lineNumber < document.lineCount &&
-                issue.SourceLines != null &&       // for 'unused', SourceLines is null, unable to determine line shift, just skip them
-                issue.SourceLines.first() != document.getText(
-                    TextRange.create(document.getLineStartOffset(lineNumber), document.getLineEndOffset(lineNumber))
-                )
-            ) {
-                /** for a modification, line is added / changed / deleted
-                 * which means, zone before / after dirty zone is not changed
-                 * issues in clean zone may still useful
-                 */
-                // entering dirty zone
-                afterDirtyZone.clear()             // previous match may be mistake in dirty zone
-                if (shiftCount > 3) break          // avoid endless shifting
-                var relocated = false
-                // search for equal line before / after
-                for (line in maxOf(0, lineNumber - 5 - shiftCount)..minOf(document.lineCount - 1, lineNumber + 5 + shiftCount)) {
-                    if (line != lineNumber
-                        && issue.SourceLines.first() == document.getText(
-                            TextRange.create(document.getLineStartOffset(line), document.getLineEndOffset(line))
-                        )
-                    ) {
-                        lineShift = line - issue.Pos.Line
-                        relocated = true
-                        break
-                    }
+        // issues of a cached result are the same list instance every pass, until the entry is replaced
+        val memo = document.getUserData(memoKey)
+        val annos =
+            if (memo != null && memo.stamp == document.modificationStamp && memo.issues === annotationResult.annotations && memo.snapshot === annotationResult.snapshot)
+                memo.annos
+            else
+                buildAnnotations(file, document, annotationResult).also {
+                    document.putUserData(memoKey, Memo(document.modificationStamp, annotationResult.annotations, annotationResult.snapshot, it))
                 }
 
-                shiftCount++
-                // unable to locate the shift, text is not matched, so skip current issue
-                if (!relocated) continue
-                // because line shifted, re-calc pos
-                lineNumber = issue.Pos.Line + lineShift
-            }
-
-            if (lineNumber >= document.lineCount) continue
-            try {
-                val handler = quickFixHandler.getOrDefault(issue.FromLinter, DefaultHandler)
-                val (quickFix, range) = handler.suggestFix(file, document, issue, lineNumber)
-
-                val zone = if (shiftCount == 0) beforeDirtyZone else afterDirtyZone
-                zone.add(Anno(handler.description(issue), range, quickFix))
-            } catch (_: Throwable) {
-                // just ignore it
-            }
-        }
         var severity = HighlightSeverity.GENERIC_SERVER_ERROR_OR_WARNING
         when (settings.severity) {
             "Warning" -> severity = HighlightSeverity.WARNING
             "Error" -> severity = HighlightSeverity.ERROR
         }
 
-        beforeDirtyZone.addAll(afterDirtyZone)
-        beforeDirtyZone.forEach {
+        annos.forEach {
             val builder = holder.newAnnotation(severity, it.description)
                 .range(it.range)
 
@@ -258,271 +215,281 @@ class GoLinterExternalAnnotator : ExternalAnnotator<PsiFile, GoLinterExternalAnn
         }
     }
 
-    private fun isSaved(file: PsiFile): Boolean {
-        val virtualFile = file.virtualFile
-        val fileEditorManager = FileEditorManager.getInstance(file.project)
-
-        var saved = true
-        val done = AtomicBoolean(false)       // here we use atomic variable as a spinlock
+    // relocate issues to current lines, annotate from reported column to line end
+    // fixes are left to handlers until asked for, see LazySuggestedFixes
+    // the element a handler would narrow the range to is not looked up either, that's the PSI walk saved
+    private fun buildAnnotations(file: PsiFile, document: Document, annotationResult: Result): List<Anno> {
+        val filePointer = SmartPointerManager.createPointer(file)
+        val lines = lineHashes(document.immutableCharSequence)
+        // linted line (0-based) <> line in document now, by a diff of the snapshot against the document
+        // identity without snapshot, or if too big to diff
+        val relocation = annotationResult.snapshot?.let { relocateLines(it, lines) }
+        val annos = mutableListOf<Anno>()
+        // issues is already sorted by #line
+        for (issue in annotationResult.annotations) {
+            val linted = issue.Pos.Line - 1     // linter reported line is 1-based
+            val lineNumber = if (relocation == null) linted else relocation.getOrElse(linted) { -1 }
+            // changed / deleted since linted
+            if (lineNumber !in lines.indices) continue
 
-        ApplicationManager.getApplication().invokeLater {
-            // ideally there should be 1 editor, unless in split view
-            for (editor in fileEditorManager.getEditors(virtualFile)) {
-                if (editor.isModified) {
-                    saved = false
-                    break
-                }
-            }
-            done.set(true)
-        }
+            // an unchanged line matches already, unless the result is outdated (computed against older content than snapshot), or has no snapshot
+            // for 'unused', SourceLines is null, unable to tell, trust the diff
+            val sourceHash = issue.sourceHash
+            if (sourceHash != null && foldHash(sourceHash) != lines[lineNumber]) continue
 
-        val now = System.currentTimeMillis()
-        while (!done.compareAndSet(true, false)) {
-            // as a last resort, break the loop on timeout
-            if (System.currentTimeMillis() - now > 1000) {
-                // may hang for 1s, hope that never happen
-                logger.info("Cannot get confirmation from dispatch thread, break the loop")
-                return false
+            try {
+                val handler = quickFixHandler.getOrDefault(issue.FromLinter, DefaultHandler)
+                annos.add(Anno(
+                    handler.description(issue),
+                    handler.defaultRange(document, issue, lineNumber),
+                    LazySuggestedFixes(handler, issue, lineNumber, filePointer, document.modificationStamp).actions
+                ))
+            } catch (_: Throwable) {
+                // just ignore it
             }
         }
-
-        return saved
+        return annos
     }
 
-    private fun buildParameters(file: PsiFile, project: Project, platform: Platform, settings: GoLinterSettings, targetDir: String): List<String> {
-        var exe = settings.goLinterExe
-        if (exe.isEmpty())
-            exe = platform.defaultExecutable
-
-        val parameters = mutableListOf(
-            platform.toRunningOSPath(exe), "run",
-            "--out-format", "json",
-            "--allow-parallel-runners",
-            // control concurrency
-            "-j", settings.concurrency.toString(),
-            // fix exit code on issue
-            "--issues-exit-code", "1",
-            // no issue limit
-            "--max-issues-per-linter", "0",
-            "--max-same-issues", "0"
-        )
-
-        customConfigDetected(settings.customProjectDir ?: project.basePath!!)
-            .or { Optional.ofNullable(settings.customConfigFile) }
-            .ifPresentOrElse(
-                    {
-                        parameters.add("-c")
-                        parameters.add(platform.toRunningOSPath(it))
-                    },
-                    {
-                        parameters.add("--no-config")
-                        // use default linters
-                        if (settings.linterSelected) {
-                            val enabledLinters = settings.enabledLinters
-                            // no linter is selected, skip run
-                            if (enabledLinters.isEmpty())
-                                throw Exception("all linters disabled")
-
-                            parameters.add("--disable-all")
-                            parameters.add("-E")
-                            parameters.add(enabledLinters.joinToString(","))
-                        }
-                    }
-                )
-
-        // add same build tags with those in Goland
-        val module = ModuleUtilCore.findModuleForFile(file)
-        if (module != null) {
-            val buildTagsSettings = GoModuleSettings.getInstance(module).buildTargetSettings
-            val default = "default"
-            val buildTags = mutableListOf<String>()
-            if (buildTagsSettings.arch != default)
-                buildTags.add(buildTagsSettings.arch)
-            if (buildTagsSettings.os != default)
-                buildTags.add(buildTagsSettings.os)
-            buildTags.addAll(buildTagsSettings.customFlags)
-
-            if (buildTags.isNotEmpty()) {
-                parameters.add("--build-tags")
-                parameters.add(buildTags.joinToString(","))
-            }
-        }
-
-        parameters.add(targetDir)
-        return parameters
-    }
+    // answered from tracked document events, without waiting for EDT
+    private fun isSaved(file: PsiFile): Boolean =
+        !GoDirtyDocumentTracker.getInstance(file.project).isDirty(file.virtualFile)
 
-    // executionLock must be hold during the whole time of execution
-    // wake up backlog thread if there's any, or release executionLock
-    private fun executeAndWakeBacklogThread(platform: Platform, runningPath: String, parameters: List<String>, vars: List<String>, encoding: Charset): RunProcessResult {
-        val result = platform.runProcess(parameters, runningPath, vars, encoding)
-        val workload = workloadsLock.withLock {
-            if (workLoads.isNotEmpty()) {
-                val kv = workLoads.first()
-                workLoads.remove(kv.key)
-                kv.value
-            } else {
-                // nobody waiting in backlog, release executionLock
-                executionLock.set(false)
-                return result
-            }
+    // lint in the shadow workspace, where unsaved documents are written, same layout so reported names match as is
+    // not cached, the content linted is not on disk
+    private fun lintUnsaved(
+        project: Project,
+        settings: GoLinterSettings,
+        platform: Platform,
+        file: PsiFile,
+        projectPath: Path,
+        absolutePath: Path,
+        matchName: String
+    ): Result? =
+        try {
+            // the buffer as written to the shadow workspace
+            val document = runReadAction { FileDocumentManager.getInstance().getDocument(file.virtualFile) }
+            val stamp = document?.modificationStamp
+            val snapshot = document?.let { runReadAction { it.immutableCharSequence } }?.let(::lineHashes)
+            val shadowRoot = GoShadowWorkspace.getInstance(project).sync(projectPath, platform::toRunningOSPath)
+            // typed on meanwhile, the mirror holds a newer buffer than the snapshot, the next pass lints that
+            if (document?.modificationStamp != stamp)
+                throw ProcessCanceledException()
+            val shadowDir = shadowRoot.resolve(projectPath.relativize(absolutePath.parent).toString())
+            val files = runAndProcessResult(
+                project,
+                settings,
+                platform,
+                LintInvocation.forPackage(
+                    platform,
+                    settings,
+                    ModuleUtilCore.findModuleForFile(file),
+                    GoLinterResultCache.getInstance(project).customConfig(settings.customProjectDir ?: project.basePath!!),
+                    shadowRoot,
+                    shadowDir
+                ),
+                shadowDir.toString(),
+                priorityOf(file),
+                file.virtualFile.charset
+            )
+            Result(matchName, files[matchName] ?: listOf(), snapshot)
+        } catch (e: ProcessCanceledException) {
+            // typing on, highlighting pass cancelled
+            throw e
+        } catch (e: Exception) {
+            logger.info("Failed to lint unsaved ${file.name}", e)
+            null
         }
 
-        // then 'executionLock' must be holding, turn over executionLock
-        workload.executionMutex.withLock {
-            workload.executionCondition.signal()
-        }
+    // the file to match the output lint, to work with WSL, match name must be converted to platform specified
+    private fun matchName(settings: GoLinterSettings, platform: Platform, projectPath: Path, absolutePath: Path): String =
+        if (settings.enableCustomProjectDir)
+            // the relative path of file to running dir
+            platform.convertToPlatformPath(projectPath.relativize(absolutePath).toString())
+        else
+            absolutePath.fileName.toString()    // relative file name
 
-        return result
-    }
+    // lint the package off the highlighting pass, then re-highlight open files of the package whose issues changed
+    private fun refresh(
+        project: Project,
+        settings: GoLinterSettings,
+        platform: Platform,
+        invocation: LintInvocation,
+        packageDir: String,
+        priority: LintPriority,
+        encoding: Charset,
+        contentHash: Long,
+        generation: Long,
+        diskKey: String,
+        stale: GoLinterResultCache.Entry
+    ) {
+        val cache = GoLinterResultCache.getInstance(project)
+        val cacheKey = invocation.fingerprint
+        // one refresh of a package at a time
+        if (!cache.startRefresh(cacheKey))
+            return
 
-    private fun execute(platform: Platform, runningPath: String, parameters: List<String>, vars: List<String>, encoding: Charset): RunProcessResult {
-        // main execution logic: 1. FIFO; 2. De-dup in backlog
-        if (executionLock.compareAndSet(false, true))
-            // own the execution lock, run immediately
-            return executeAndWakeBacklogThread(platform, runningPath, parameters, vars, encoding)
-
-        // had to wait, add to backlog
-        val (foundInBacklog, workload) = workloadsLock.withLock {
-            // double check
-            if (executionLock.compareAndSet(false, true))
-                // working thread released executionLock, so there's no backlog now, run immediately
-                return executeAndWakeBacklogThread(platform, runningPath, parameters, vars, encoding)
-
-            var found = true
-            var wl = workLoads[runningPath]
-            if (wl == null) {
-                found = false
-                wl = GoLinterWorkLoad()
-                workLoads[runningPath] = wl
+        ApplicationManager.getApplication().executeOnPooledThread {
+            // null: every open file of the package
+            var changed: Set<String>? = setOf()
+            try {
+                val files = runAndProcessResult(project, settings, platform, invocation, packageDir, priority, encoding)
+                cache.put(cacheKey, GoLinterResultCache.Entry(System.currentTimeMillis(), contentHash, files, GoPackageChangeTracker.lineSnapshots(packageDir, generation, files)))
+                GoLinterDiskCache.put(settings, diskKey, files)
+
+                // compare in compacted form, same as the stale one
+                val fresh = cache.get(cacheKey)?.files ?: files
+                changed = (fresh.keys + stale.files.keys).filterTo(mutableSetOf()) { fresh[it] != stale.files[it] }
+            } catch (e: ProcessCanceledException) {
+                // package changed meanwhile, let a new highlighting pass start another refresh
+                changed = null
+            } catch (e: Exception) {
+                // run failed, already notified
+            } finally {
+                cache.endRefresh(cacheKey)
             }
 
-            if (found) wl.broadcastMutex.lock()     // wait on others notify me
-            else wl.executionMutex.lock()           // wait on others release execution lock
-
-            found to wl
+            val affected = changed
+            if (affected?.isEmpty() == true)
+                return@executeOnPooledThread
+
+            val projectPath = Paths.get(settings.customProjectDir ?: project.basePath!!)
+            ApplicationManager.getApplication().invokeLater({
+                val psiManager = PsiManager.getInstance(project)
+                for (file in FileEditorManager.getInstance(project).openFiles) {
+                    val path = Paths.get(file.path)
+                    if (path.parent?.toString() == packageDir && (affected == null || matchName(settings, platform, projectPath, path) in affected))
+                        psiManager.findFile(file)?.let { DaemonCodeAnalyzer.getInstance(project).restart(it) }
+                }
+            }, project.disposed)
         }
+    }
 
-        if (foundInBacklog) {
-            // waiting for others finish the job
-            workload.broadcastCondition.await()
-            workload.broadcastMutex.unlock()
-        } else {
-            workload.executionCondition.await()
-            workload.executionMutex.unlock()
-            // executionLock guaranteed
-            workload.result = executeAndWakeBacklogThread(platform, runningPath, parameters, vars, encoding)
-            // wake up backlog threads listen on me
-            workload.broadcastMutex.lock()
-            workload.broadcastCondition.signalAll()
-            workload.broadcastMutex.unlock()
+    private fun priorityOf(file: PsiFile): LintPriority {
+        val virtualFile = file.virtualFile
+        val fileEditorManager = FileEditorManager.getInstance(file.project)
+        return when {
+            fileEditorManager.selectedEditor?.file == virtualFile -> LintPriority.FOCUSED
+            fileEditorManager.selectedFiles.contains(virtualFile) -> LintPriority.VISIBLE
+            fileEditorManager.isFileOpen(virtualFile) -> LintPriority.OPEN
+            else -> LintPriority.BACKGROUND
         }
-
-        return workload.result!!
     }
 
-    // return issues (might be empty) if run succeed
+    // return reported filename <> issues (might be empty) if run succeed
     // return null if run failed
     private fun runAndProcessResult(
         project: Project,
+        settings: GoLinterSettings,
         platform: Platform,
-        runningPath: String,
-        parameters: List<String>,
-        vars: List<String>,
+        invocation: LintInvocation,
+        packageDir: String,
+        priority: LintPriority,
         encoding: Charset
-    ): List<LintIssue> {
-        val processResult = execute(platform, runningPath, parameters, vars, encoding)
-        when (processResult.returnCode) {
-            // 0: no hint found; 1: hint found
-            0, 1 ->
-                return Gson().fromJson(processResult.stdout, LintReport::class.java)
-                    .Issues
-                    ?.sortedWith(compareBy({ issue -> issue.Pos.Filename }, { issue -> issue.Pos.Line }))
-                    ?: listOf()
-            // run error
-            else -> {
-                logger.warn("Run error: ${processResult.stderr}. Please make sure the project has no syntax error.")
-
-                val now = System.currentTimeMillis()
-                // freq cap 1min
-                if (showError && (notificationLastTime.get() + notificationFrequencyCap) < now) {
-                    logger.warn("Debug command: ${ platform.buildCommand(parameters, runningPath, vars) }")
-
-                    val notification = when {
-                        // syntax error or package not found, fix that first
-                        processResult.stderr.contains("analysis skipped: errors in package") || processResult.stderr.contains("typechecking error") ->
-                            throw Exception("syntax error")
-                        processResult.stderr.contains("Can't read config") ->
-                            notificationGroup.createNotification(
-                                    ErrorTitle,
-                                    "Invalid format of config file",
-                                    NotificationType.ERROR).apply {
-                                // find the config file
-                                findCustomConfigInPath(project.basePath!!).ifPresent {
-                                    val configFile = File(it)
-                                    if (configFile.exists()) {
-                                        this.addAction(NotificationAction.createSimple("Open ${configFile.name}") {
-                                            OpenFileDescriptor(project, LocalFileSystem.getInstance().findFileByIoFile(configFile)!!).navigate(true)
-                                            this.expire()
-                                        })
-                                    }
-                                }
-                            }
-                        processResult.stderr.contains("all linters were disabled, but no one linter was enabled") ->
-                            notificationGroup.createNotification(
-                                    ErrorTitle,
-                                    "Must enable at least one linter",
-                                    NotificationType.ERROR).apply {
-                                this.addAction(NotificationAction.createSimple("Configure") {
-                                    ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
-                                    this.expire()
-                                })
-                            }
-                        processResult.stderr.contains("\\\"go\\\": executable file not found in \$PATH") ->
-                            notificationGroup.createNotification(
-                                    ErrorTitle,
-                                    "'GOROOT' must be set",
-                                    NotificationType.ERROR).apply {
-                                this.addAction(NotificationAction.createSimple("Setup GOROOT") {
-                                    ShowSettingsUtil.getInstance().editConfigurable(project, GoSdkConfigurable(project, true))
-                                    this.expire()
-                                })
-                            }
-                        processResult.stderr.contains("error computing diff") ->
-                            notificationGroup.createNotification(
-                                    ErrorTitle,
-                                    "Diff is needed for running gofmt/goimports/gci. Either put <a href=\"https://ftp.gnu.org/gnu/diffutils/\">GNU diff</a> & <a href=\"https://ftp.gnu.org/pub/gnu/libiconv/\">GNU LibIconv</a> binary in PATH, or disable them",
-                                    NotificationType.ERROR).apply {
-                                this.setListener(NotificationListener.URL_OPENING_LISTENER)
-                                this.addAction(NotificationAction.createSimple("Configure") {
-                                    ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
-                                    this.expire()
-                                })
-                            }
-                        else ->
-                            notificationGroup.createNotification(
-                                    ErrorTitle,
-                                    processResult.stderr,
-                                    NotificationType.WARNING).apply {
-                                this.addAction(NotificationAction.createSimple("Configure") {
-                                    ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
+    ): Map<String, List<LintIssue>> {
+        // limit golangci-lint concurrency, save CPU resource
+        // identical invocations share a single run, which is tied to the current highlighting pass
+        val (runningPath, parameters, vars) = invocation
+        val runResult = GoLinterExecutionPool.execute(
+            invocation,
+            packageDir,
+            ProgressManager.getInstance().progressIndicator,
+            priority,
+            settings
+        ) { merged, cancelled ->
+            // might be merged with other packages
+            GoLinterResourceGovernor.run(project, settings, platform, merged, encoding, cancelled)
+        }
+
+        runResult.files?.let { return it }
+
+        // run error
+        val processResult = runResult.process
+        logger.warn("Run error: ${processResult.stderr}. Please make sure the project has no syntax error.")
+
+        val now = System.currentTimeMillis()
+        // freq cap 1min
+        if (showError && (notificationLastTime.get() + notificationFrequencyCap) < now) {
+            logger.warn("Debug command: ${ platform.buildCommand(parameters, runningPath, vars) }")
+
+            val notification = when {
+                // syntax error or package not found, fix that first
+                processResult.stderr.contains("analysis skipped: errors in package") || processResult.stderr.contains("typechecking error") ->
+                    throw Exception("syntax error")
+                processResult.truncated ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            "Output of golangci-lint exceeds ${settings.maxOutputSize}MB (${processResult.stdoutBytes / 1024 / 1024}MB), result dropped",
+                            NotificationType.WARNING)
+                processResult.stderr.contains("Can't read config") ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            "Invalid format of config file",
+                            NotificationType.ERROR).apply {
+                        // find the config file
+                        findCustomConfigInPath(project.basePath!!).ifPresent {
+                            val configFile = File(it)
+                            if (configFile.exists()) {
+                                this.addAction(NotificationAction.createSimple("Open ${configFile.name}") {
+                                    OpenFileDescriptor(project, LocalFileSystem.getInstance().findFileByIoFile(configFile)!!).navigate(true)
                                     this.expire()
                                 })
                             }
+                        }
                     }
+                processResult.stderr.contains("all linters were disabled, but no one linter was enabled") ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            "Must enable at least one linter",
+                            NotificationType.ERROR).apply {
+                        this.addAction(NotificationAction.createSimple("Configure") {
+                            ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
+                            this.expire()
+                        })
+                    }
+                processResult.stderr.contains("\\\"go\\\": executable file not found in \$PATH") ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            "'GOROOT' must be set",
+                            NotificationType.ERROR).apply {
+                        this.addAction(NotificationAction.createSimple("Setup GOROOT") {
+                            ShowSettingsUtil.getInstance().editConfigurable(project, GoSdkConfigurable(project, true))
+                            this.expire()
+                        })
+                    }
+                processResult.stderr.contains("error computing diff") ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            "Diff is needed for running gofmt/goimports/gci. Either put <a href=\"https://ftp.gnu.org/gnu/diffutils/\">GNU diff</a> & <a href=\"https://ftp.gnu.org/pub/gnu/libiconv/\">GNU LibIconv</a> binary in PATH, or disable them",
+                            NotificationType.ERROR).apply {
+                        this.setListener(NotificationListener.URL_OPENING_LISTENER)
+                        this.addAction(NotificationAction.createSimple("Configure") {
+                            ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
+                            this.expire()
+                        })
+                    }
+                else ->
+                    notificationGroup.createNotification(
+                            ErrorTitle,
+                            processResult.stderr,
+                            NotificationType.WARNING).apply {
+                        this.addAction(NotificationAction.createSimple("Configure") {
+                            ShowSettingsUtil.getInstance().editConfigurable(project, GoLinterConfigurable(project))
+                            this.expire()
+                        })
+                    }
+            }
 
-                    notification.addAction(NotificationAction.createSimple("Do not show again") {
-                        showError = false
-                        notification.expire()
-                    })
-
-                    notification.notify(project)
-                    notificationLastTime.set(now)
-                }
+            notification.addAction(NotificationAction.createSimple("Do not show again") {
+                showError = false
+                notification.expire()
+            })
 
-                // as run failed, skip annotate and cache
-                throw Exception("run failed")
-            }
+            notification.notify(project)
+            notificationLastTime.set(now)
         }
+
+        // as run failed, skip annotate and cache
+        throw Exception("run failed")
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.ypwang.plugin
+
+import com.goide.GoFileType
+import com.intellij.openapi.module.ModuleManager
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.progress.Task
+import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.project.Project
+import com.intellij.psi.search.FileTypeIndex
+import com.intellij.psi.search.GlobalSearchScope
+import com.ypwang.plugin.model.LintIssue
+import com.ypwang.plugin.platform.Platform.Companion.platformFactory
+import java.io.File
+import java.io.IOException
+import java.nio.charset.Charset
+import java.nio.file.Path
+import java.nio.file.Paths
+
+// lint the whole project once in background, then split the report by package dir into the result cache
+// so files open with results already there, also warms Go build cache & golangci-lint cache for later per-package runs
+class GoLinterPrefillTask(project: Project) : Task.Backgroundable(project, "Lint project with golangci-lint", true) {
+    companion object {
+        // golangci-lint skips these dirs by default, can't tell they're clean
+        private val skippedDirs = setOf("vendor", "third_party", "testdata", "examples", "Godeps", "builtin")
+
+        // `./...` never visits dirs starting with `_` / `.`, nor packages of nested modules
+        // skip-dirs / exclude-dirs of config are not parsed, with any of them a package without issue might just be skipped
+        private fun covered(projectPath: Path, dir: Path, rootModule: Path?, configExcludesDirs: Boolean): Boolean =
+            !configExcludesDirs &&
+                projectPath.relativize(dir).none { it.toString().startsWith("_") || it.toString().startsWith(".") } &&
+                GoImportGraph.moduleDir(dir.toString()) == rootModule
+
+        private fun excludesDirs(config: String?): Boolean =
+            try {
+                config?.let { File(it) }?.takeIf { it.isFile }?.readText()?.let { "skip-dirs" in it || "exclude-dirs" in it } ?: false
+            } catch (e: IOException) {
+                true
+            }
+    }
+
+    override fun run(indicator: ProgressIndicator) {
+        indicator.isIndeterminate = true
+
+        try {
+            val settings = GoLinterSettings.getInstance(project)
+            val platform = platformFactory(project)
+            val projectPath = Paths.get(settings.customProjectDir ?: project.basePath!!)
+            val detectedConfig = findCustomConfigInPath(projectPath.toString())
+            if (!platform.canExecute(settings.goLinterExe) && !(detectedConfig.isPresent && platform.defaultExecutable.isNotEmpty()))
+                return
+
+            val packageDirs = DumbService.getInstance(project).runReadActionInSmartMode<Set<String>> {
+                FileTypeIndex.getFiles(GoFileType.INSTANCE, GlobalSearchScope.projectScope(project))
+                    .mapNotNull { it.parent?.path }
+                    .map { Paths.get(it).toString() }
+                    .toSet()
+            }.filter { dir ->
+                val path = Paths.get(dir)
+                path.startsWith(projectPath) && projectPath.relativize(path).none { it.toString() in skippedDirs }
+            }
+
+            // package content the result is computed against, must be taken before the run
+            // also builds the import graph of the whole project
+            val generations = packageDirs.associateWith { GoPackageChangeTracker.generation(it) }
+            val contentHashes = packageDirs.associateWith { GoImportGraph.dependencyHash(it) }
+            indicator.checkCanceled()
+
+            val start = System.currentTimeMillis()
+            val module = ModuleManager.getInstance(project).modules.firstOrNull()
+            val result = GoLinterExecutionPool.execute(
+                LintInvocation.build(
+                    platform,
+                    settings,
+                    module,
+                    detectedConfig,
+                    projectPath.toString(),
+                    "./..."
+                ),
+                projectPath.toString(),
+                indicator,
+                LintPriority.BACKGROUND,
+                settings
+            ) { invocation, cancelled ->
+                GoLinterResourceGovernor.run(project, settings, platform, invocation, Charset.defaultCharset(), cancelled)
+            }
+
+            val files = result.files
+            if (files == null) {
+                logger.info("Background lint of ${project.name} failed: ${result.process.stderr}")
+                return
+            }
+
+            // reported filename is relative to project path, annotator matches it by file name if running in package dir
+            val byDir = files.entries.groupBy { projectPath.resolve(reportedDir(it.key)).normalize().toString() }
+                .mapValues { (_, dirFiles) ->
+                    if (settings.enableCustomProjectDir) dirFiles.associate { it.toPair() }
+                    else dirFiles.associate { (filename, issues) ->
+                        val name = Paths.get(filename).fileName.toString()
+                        name to issues.map { it.copy(Pos = it.Pos.copy(Filename = name)) }
+                    }
+                }
+
+            // packages without issue are clean, as long as the run did visit them, otherwise leave them to the annotator
+            val rootModule = GoImportGraph.moduleDir(projectPath.toString())
+            val configExcludesDirs = excludesDirs(detectedConfig.orElse(settings.customConfigFile))
+            var prefilled = 0
+            for ((dir, contentHash) in contentHashes) {
+                val packageFiles = byDir[dir] ?: if (covered(projectPath, Paths.get(dir), rootModule, configExcludesDirs)) mapOf<String, List<LintIssue>>() else continue
+                // keyed the same as the annotator would lint the package
+                val invocation = LintInvocation.forPackage(platform, settings, module, detectedConfig, projectPath, Paths.get(dir))
+                prefilled++
+                GoLinterResultCache.getInstance(project).putIfNewer(invocation.fingerprint, GoLinterResultCache.Entry(start, contentHash, packageFiles, GoPackageChangeTracker.lineSnapshots(dir, generations.getValue(dir), packageFiles)))
+                GoLinterDiskCache.put(settings, GoLinterDiskCache.key(invocation, platform.toRunningOSPath(projectPath.toString()), contentHash), packageFiles)
+            }
+
+            logger.info("Background lint of ${project.name} prefilled $prefilled of ${packageDirs.size} packages in ${System.currentTimeMillis() - start}ms")
+        } catch (e: ProcessCanceledException) {
+            // cancelled by user or superseded
+        } catch (e: Exception) {
+            logger.info("Background lint of ${project.name} failed", e)
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.project.Project
+import com.ypwang.plugin.model.ProcessOptions
+import com.ypwang.plugin.model.RunProcessResult
+import com.ypwang.plugin.platform.Platform
+import java.lang.management.ManagementFactory
+import java.nio.charset.Charset
+
+// keep golangci-lint from starving the IDE: it can use every core and several GB RAM on a big package
+// limits are decided per run, by project policy and current IDE load, and applied to the child process thru
+// scheduling priority (nice) and Go runtime env: GOMAXPROCS, GOMEMLIMIT, GOGC, unless the user set them already
+// opt in by policy, unrestricted by default
+object GoLinterResourceGovernor {
+    const val PolicyUnrestricted = "Unrestricted"
+    const val PolicyBalanced = "Balanced"
+    const val PolicyLow = "Low"
+
+    private const val MiB = 1024L * 1024
+    // project-wide report could be hundreds of MB, mostly repeated source lines
+    private const val SpillThreshold = 32 * MiB
+
+    data class Limits(
+        val niceness: Int,          // 0: unchanged
+        val maxProcs: Int?,
+        val memLimit: Long?,        // bytes
+        val gogc: Int?
+    ) {
+        fun toEnv(): Map<String, String> =
+            mutableMapOf<String, String>().apply {
+                maxProcs?.let { this["GOMAXPROCS"] = it.toString() }
+                memLimit?.let { this["GOMEMLIMIT"] = "${it / MiB}MiB" }
+                gogc?.let { this["GOGC"] = it.toString() }
+            }
+    }
+
+    private data class RunRecord(
+        val timestamp: Long,
+        val runningPath: String,
+        val jobs: Int,
+        val limits: Limits,
+        val duration: Long,         // ms
+        val cpuTime: Long,          // ms
+        val peakMemory: Long        // bytes
+    )
+
+    private val physicalMemory: Long by lazy {
+        (ManagementFactory.getOperatingSystemMXBean() as? com.sun.management.OperatingSystemMXBean)?.totalMemorySize ?: 0
+    }
+
+    // IDE is busy if indexing, or the machine is already overloaded
+    private fun busy(project: Project): Boolean =
+        DumbService.isDumb(project) ||
+            ManagementFactory.getOperatingSystemMXBean().systemLoadAverage >= Runtime.getRuntime().availableProcessors()
+
+    // jobs: `-j` of the run
+    // memory share is split by runs that may go at the same time (pool slots + the burst slot), so the sum stays bounded
+    fun limits(project: Project, settings: GoLinterSettings, jobs: Int): Limits {
+        val busy = busy(project)
+        val concurrency = maxOf(1, jobs)
+        val runs = GoLinterExecutionPool.slots(settings) + 1
+        return when (settings.resourcePolicy) {
+            PolicyUnrestricted -> Limits(0, null, null, null)
+            PolicyLow -> Limits(
+                19,
+                maxOf(1, if (busy) concurrency / 2 else concurrency),
+                physicalMemory.takeIf { it > 0 }?.let { it / 8 / runs },
+                50
+            )
+            // balanced
+            else -> Limits(
+                10,
+                if (busy) maxOf(1, concurrency / 2) else concurrency,
+                physicalMemory.takeIf { it > 0 }?.let { it / 4 / runs },
+                // trade CPU for memory while IDE is busy
+                if (busy) 50 else null
+            )
+        }
+    }
+
+    // run golangci-lint under governed limits, log the applied limits & observed usage
+    fun run(
+        project: Project,
+        settings: GoLinterSettings,
+        platform: Platform,
+        invocation: LintInvocation,
+        encoding: Charset,
+        cancelled: () -> Boolean
+    ): RunProcessResult {
+        val jobs = GoLinterConcurrencyController.jobs(settings)
+        val limits = limits(project, settings, jobs)
+        // control concurrency, right after `golangci-lint run`
+        val parameters = invocation.parameters.take(2) + listOf("-j", jobs.toString()) + invocation.parameters.drop(2)
+        val start = System.currentTimeMillis()
+        val result = platform.runProcess(
+            platform.withNiceness(parameters, limits.niceness),
+            invocation.runningPath,
+            invocation.vars,
+            ProcessOptions(encoding, cancelled, limits.toEnv(), (settings.maxOutputSize * MiB).coerceAtMost(Int.MAX_VALUE.toLong()).toInt(), SpillThreshold.toInt())
+        )
+
+        val duration = System.currentTimeMillis() - start
+        GoLinterConcurrencyController.feedback(project, settings, invocation, jobs, duration)
+
+        logger.debug("golangci-lint run: ${RunRecord(start, invocation.runningPath, jobs, limits, duration, result.cpuTime, result.peakMemory)}")
+
+        return result
+    }
+}
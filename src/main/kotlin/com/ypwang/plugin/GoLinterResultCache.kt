@@ -0,0 +1,181 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.LowMemoryWatcher
+import com.intellij.util.containers.Interner
+import com.ypwang.plugin.form.GoLinterConfigurable
+import com.ypwang.plugin.model.LintIssue
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+// cache invocation fingerprint of a package <> result, per project, released on project close
+/** Intellij share memory between instances
+ *  If multiple projects are opened, this plugin will cache a lot issues and eventually eat up all memory, slow down the IDE
+ *  bounded by estimated bytes rather than entry count, a package with thousands of issues outweighs dozens of small ones
+ *  the IDE wide budget is split evenly across open projects, so one project's churn doesn't evict another's results
+ *  issues are compacted on put: linter names & messages interned, source lines replaced by fingerprints
+ */
+class GoLinterResultCache(private val project: Project) : Disposable {
+    // contentHash: package content the result is computed against, see GoPackageChangeTracker
+    // files: reported filename <> issues sorted by line
+    // snapshots: .go file name in package dir <> line snapshot the result is computed against, only files having issues, see GoPackageChangeTracker.lineSnapshots
+    data class Entry(val timestamp: Long, val contentHash: Long, val files: Map<String, List<LintIssue>>, val snapshots: Map<String, IntArray>)
+
+    companion object {
+        private const val MemoryBudget = 64L * 1024 * 1024
+
+        // caches of open projects
+        private val instances = ConcurrentHashMap.newKeySet<GoLinterResultCache>()
+        // shared by projects, a string is dropped once no cache holds it
+        private val interner = Interner.createWeakInterner<String>()
+
+        @JvmStatic
+        fun getInstance(project: Project): GoLinterResultCache = project.service()
+    }
+
+    // keys being refreshed in background, see staleWhileRevalidate
+    private val refreshing = ConcurrentHashMap.newKeySet<String>()
+
+    // access ordered, eldest is least recently used
+    private val cache = LinkedHashMap<String, Pair<Entry, Long>>(16, 0.75f, true)
+    private var bytes = 0L
+
+    // config file found in project path, checked at most once a minute, or after settings saved
+    private var customConfig: Optional<String> = Optional.empty()
+    private var customConfigPath: String? = null
+    private var customConfigLastCheckTime = AtomicLong(-1)
+
+    init {
+        instances.add(this)
+        // others' share shrinks
+        instances.forEach { it.trim() }
+
+        // drop half under memory pressure
+        LowMemoryWatcher.register({
+            synchronized(cache) {
+                val before = footprint
+                trim(bytes / 2)
+                logger.info("Low memory, lint result cache of ${project.name} shrunk from $before to $footprint")
+            }
+        }, this)
+    }
+
+    override fun dispose() {
+        // others' share grows, they fill it up as they go
+        instances.remove(this)
+        synchronized(cache) {
+            cache.clear()
+            bytes = 0
+        }
+
+        // content hashes & import graph of the project's packages are of no use anymore
+        project.basePath?.let {
+            GoPackageChangeTracker.forget(it)
+            GoImportGraph.forget(it)
+        }
+    }
+
+    private val budget: Long
+        get() = MemoryBudget / maxOf(1, instances.size)
+
+    // estimated bytes held & entry count, for logs; must hold the lock
+    private val footprint: String
+        get() = "$bytes bytes in ${cache.size} entries"
+
+    @Synchronized
+    fun customConfig(path: String): Optional<String> =
+        System.currentTimeMillis().let {
+            if (path != customConfigPath || customConfigLastCheckTime.get() + 60000 < it || customConfigLastCheckTime.get() < GoLinterConfigurable.getLastSavedTime()) {
+                customConfig = findCustomConfigInPath(path)
+                customConfigPath = path
+                customConfigLastCheckTime.set(it)
+            }
+
+            customConfig
+        }
+
+    // false if already refreshing
+    fun startRefresh(key: String): Boolean = refreshing.add(key)
+
+    fun endRefresh(key: String) {
+        refreshing.remove(key)
+    }
+
+    fun get(key: String): Entry? =
+        synchronized(cache) {
+            cache[key]?.first
+        }
+
+    fun put(key: String, entry: Entry) {
+        val compacted = compact(entry)
+        val weight = weight(compacted)
+        synchronized(cache) {
+            store(key, compacted, weight)
+        }
+    }
+
+    // don't overwrite a result newer than this one
+    fun putIfNewer(key: String, entry: Entry) {
+        val compacted = compact(entry)
+        val weight = weight(compacted)
+        synchronized(cache) {
+            val cur = cache[key]?.first
+            if (cur == null || cur.timestamp < entry.timestamp)
+                store(key, compacted, weight)
+        }
+    }
+
+    // must hold the lock
+    private fun store(key: String, entry: Entry, weight: Long) {
+        cache.put(key, entry to weight)?.let { bytes -= it.second }
+        bytes += weight
+        trim(budget)
+    }
+
+    private fun trim() =
+        synchronized(cache) {
+            trim(budget)
+        }
+
+    // must hold the lock
+    private fun trim(budget: Long) {
+        var evicted = 0
+        val iterator = cache.values.iterator()
+        while (bytes > budget && iterator.hasNext()) {
+            bytes -= iterator.next().second
+            iterator.remove()
+            evicted++
+        }
+        if (evicted > 0)
+            logger.debug("Lint result cache of ${project.name} evicted $evicted entries, holds $footprint, budget $budget bytes")
+    }
+
+    private fun compact(entry: Entry): Entry =
+        entry.copy(files = entry.files.mapValues { (filename, issues) ->
+            issues.map {
+                it.copy(
+                    FromLinter = interner.intern(it.FromLinter),
+                    Text = interner.intern(it.Text),
+                    Pos = if (it.Pos.Filename === filename) it.Pos else it.Pos.copy(Filename = filename),
+                    SourceLines = null,
+                    SourceHash = it.sourceHash
+                )
+            }
+        })
+
+    // rough JVM footprint: headers & fields of issue / position / replacement, plus chars, interned strings counted as if owned
+    // plus line snapshots, held by the entry only
+    private fun weight(entry: Entry): Long =
+        entry.snapshots.entries.sumOf { (name, lines) -> 80L + name.length * 2 + lines.size * 4 } +
+        entry.files.entries.sumOf { (filename, issues) ->
+            64L + filename.length * 2 + issues.sumOf { issue ->
+                val replacement = issue.Replacement?.let { r ->
+                    32L + (r.NewLines?.sumOf { 40L + it.length * 2 } ?: 0) + (r.Inline?.let { 48L + it.NewString.length * 2 } ?: 0)
+                } ?: 0
+                112L + issue.Text.length * 2 + replacement + (if (issue.LineRange != null) 24 else 0)
+            }
+        }
+}
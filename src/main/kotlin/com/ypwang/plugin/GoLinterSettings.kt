@@ -13,8 +13,29 @@ class GoLinterSettingsState : BaseState() {
     var customConfigFile by string()
     var checkGoLinterExe by property(true)
     // don't use too much CPU. Runtime should have at least 1 available processor, right?
+    // upper bound of `-j` if adaptive
     var concurrency by property((Runtime.getRuntime().availableProcessors() + 3) / 4) { it == (Runtime.getRuntime().availableProcessors() + 3) / 4 }
     var severity by string()
+    // how many golangci-lint processes may run at the same time IDE wide, 0: derived from core count & concurrency
+    var maxParallelRuns by property(0)
+    // collapse lint requests of a package arriving within this window (ms) into one run, 0: disabled
+    var debounceWindow by property(300)
+    // lint the whole project in background on project open, to prefill results
+    var prefillOnOpen by property(false)
+    // resource limits of golangci-lint process: Unrestricted, Balanced, Low; opt in, runs as before by default
+    var resourcePolicy by string(GoLinterResourceGovernor.PolicyUnrestricted)
+    // adjust `-j` per run by latency, backlog & system load
+    var adaptiveConcurrency by property(false)
+    // max MB of golangci-lint output kept in memory per run
+    var maxOutputSize by property(256)
+    // re-lint open files of dependent packages once a package changes
+    var relintDependents by property(false)
+    // max MB of lint results kept on disk across IDE restarts, 0: disabled
+    var persistentCacheSize by property(64)
+    // return outdated result right away & lint in background, instead of holding highlighting for the run
+    var staleWhileRevalidate by property(false)
+    // lint unsaved documents thru a shadow copy of the project
+    var lintUnsaved by property(false)
 }
 
 @State(name = "GoLinterSettings", storages = [(Storage("golinter.xml"))])
@@ -60,6 +81,46 @@ class GoLinterSettings(internal val project: Project): SimplePersistentStateComp
         get() = state.severity
         set(value) { state.severity = value }
 
+    var maxParallelRuns
+        get() = state.maxParallelRuns
+        set(value) { state.maxParallelRuns = value }
+
+    var debounceWindow
+        get() = state.debounceWindow
+        set(value) { state.debounceWindow = value }
+
+    var prefillOnOpen
+        get() = state.prefillOnOpen
+        set(value) { state.prefillOnOpen = value }
+
+    var resourcePolicy
+        get() = state.resourcePolicy ?: GoLinterResourceGovernor.PolicyUnrestricted
+        set(value) { state.resourcePolicy = value }
+
+    var adaptiveConcurrency
+        get() = state.adaptiveConcurrency
+        set(value) { state.adaptiveConcurrency = value }
+
+    var maxOutputSize
+        get() = state.maxOutputSize
+        set(value) { state.maxOutputSize = value }
+
+    var relintDependents
+        get() = state.relintDependents
+        set(value) { state.relintDependents = value }
+
+    var persistentCacheSize
+        get() = state.persistentCacheSize
+        set(value) { state.persistentCacheSize = value }
+
+    var staleWhileRevalidate
+        get() = state.staleWhileRevalidate
+        set(value) { state.staleWhileRevalidate = value }
+
+    var lintUnsaved
+        get() = state.lintUnsaved
+        set(value) { state.lintUnsaved = value }
+
     override fun noStateLoaded() {
         super.noStateLoaded()
         loadState(GoLinterSettingsState())
@@ -83,6 +83,9 @@ class GoLinterSettingsTracker : StartupActivity.DumbAware {
                 }
             }
         })
+
+        if (GoLinterSettings.getInstance(project).prefillOnOpen)
+            ProgressManager.getInstance().run(GoLinterPrefillTask(project))
     }
 
     private fun noExecutableNotification(project: Project) {
@@ -0,0 +1,223 @@
+package com.ypwang.plugin
+
+import com.google.common.hash.Hashing
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import com.ypwang.plugin.model.LintIssue
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+// track changes of Go packages (dirs) from VFS events
+// every save / create / delete / move of a .go file bumps the generation of its package
+// so a lint run knows it's superseded once the generation it started with is no longer current
+// also keeps a combined content hash of each package, so a result is reused as long as the package content is the same
+class GoPackageChangeTracker : BulkFileListener {
+    // imports: import paths of the file, scanned along with hashing
+    private class FileContent(val hash: Long, val imports: List<String>)
+
+    // .go file name <> content, computed on demand, dropped on change
+    // names: sorted .go file names in the dir, listed on demand, dropped on create / delete / move
+    private class PackageContent {
+        val files = ConcurrentHashMap<String, FileContent>()
+        @Volatile var names: List<String>? = null
+    }
+
+    companion object {
+        // package dir (host OS format, same as annotator package dir) <> generation
+        private val generations = ConcurrentHashMap<String, AtomicLong>()
+        private val contents = ConcurrentHashMap<String, PackageContent>()
+
+        fun generation(dir: String): Long = generations[dir]?.get() ?: 0
+
+        // a package changed without VFS event, like the shadow workspace written thru NIO, runs started before are superseded
+        fun touch(dir: String) {
+            generations.computeIfAbsent(dir) { AtomicLong() }.incrementAndGet()
+        }
+
+        // file name <> content of all .go files in the package dir, only files changed since last call are read again
+        private fun files(dir: String): List<Pair<String, FileContent>> {
+            val content = contents.computeIfAbsent(dir) { PackageContent() }
+            val path = Paths.get(dir)
+            val names = content.names ?: listGoFiles(path).also { content.names = it }
+            return names.map { name -> name to content.files.computeIfAbsent(name) { readFile(path.resolve(it)) } }
+        }
+
+        // combined hash of names & contents of all .go files in the package dir
+        fun contentHash(dir: String): Long {
+            val hasher = Hashing.murmur3_128().newHasher()
+            for ((name, file) in files(dir))
+                hasher.putString(name, Charsets.UTF_8).putLong(file.hash)
+            return hasher.hash().asLong()
+        }
+
+        // file name <> line snapshot of package files having issues, as on disk now, see relocateLines
+        // read on each call, not kept here; the result cache entry holds what it needs
+        // empty if the package changed since `generation` (taken along with the content hash), the snapshot might not be what was linted
+        fun lineSnapshots(dir: String, generation: Long, files: Map<String, List<LintIssue>>): Map<String, IntArray> {
+            val snapshots = files.filterValues { it.isNotEmpty() }.keys
+                .map { it.substringAfterLast('/').substringAfterLast('\\') }
+                .mapNotNull { name ->
+                    try {
+                        name to lineHashes(Files.readString(Paths.get(dir, name)))
+                    } catch (e: IOException) {
+                        null
+                    }
+                }.toMap()
+            return if (generation(dir) == generation) snapshots else mapOf()
+        }
+
+        // drop everything known of package dirs under root, on project close or when they're of no use anymore
+        fun forget(root: String) {
+            val prefix = Paths.get(root)
+            generations.keys.removeIf { Paths.get(it).startsWith(prefix) }
+            contents.keys.removeIf { Paths.get(it).startsWith(prefix) }
+        }
+
+        // import paths of all .go files in the package dir, test files included
+        fun imports(dir: String): Set<String> =
+            files(dir).flatMapTo(mutableSetOf()) { it.second.imports }
+
+        private fun listGoFiles(dir: Path): List<String> =
+            try {
+                Files.newDirectoryStream(dir, "*.go").use { stream ->
+                    stream.filter { Files.isRegularFile(it) }.map { it.fileName.toString() }.sorted()
+                }
+            } catch (e: IOException) {
+                listOf()
+            }
+
+        private fun readFile(file: Path): FileContent =
+            try {
+                val bytes = Files.readAllBytes(file)
+                FileContent(Hashing.murmur3_128().hashBytes(bytes).asLong(), scanImports(String(bytes, Charsets.UTF_8)))
+            } catch (e: IOException) {
+                // removed meanwhile, the listing will be dropped by its event
+                FileContent(0, listOf())
+            }
+
+        // `import "a"`, `import b "a"`, or an `import (...)` block, all before the first declaration
+        // alias is a name, `_` or `.`; path is an interpreted or raw string, neither can hold a quote, `)` or `;`
+        private val importKeyword = Regex("""^import\b""")
+        private val importSpec = Regex("""^(?:[\p{L}\p{N}_.]+\s*)?["`]([^"`]+)["`]""")
+        private val declaration = Regex("""^(func|type|var|const)\b""")
+
+        // line with comments left out, and whether a block comment is still open at its end
+        private fun stripComments(line: String, inComment: Boolean): Pair<String, Boolean> {
+            val out = StringBuilder(line.length)
+            var comment = inComment
+            var quote: Char? = null
+            var i = 0
+            while (i < line.length) {
+                val c = line[i]
+                when {
+                    comment -> if (line.startsWith("*/", i)) {
+                        comment = false
+                        out.append(' ')
+                        i++
+                    }
+                    quote != null -> {
+                        out.append(c)
+                        if (c == '\\' && quote == '"' && i + 1 < line.length)
+                            out.append(line[++i])
+                        else if (c == quote)
+                            quote = null
+                    }
+                    c == '"' || c == '`' -> {
+                        quote = c
+                        out.append(c)
+                    }
+                    line.startsWith("//", i) -> break
+                    line.startsWith("/*", i) -> {
+                        comment = true
+                        i++
+                    }
+                    else -> out.append(c)
+                }
+                i++
+            }
+            return out.toString() to comment
+        }
+
+        // a cheap scan of file text, instead of parsing PSI for every file of every package
+        internal fun scanImports(text: String): List<String> {
+            val imports = mutableListOf<String>()
+            var inBlock = false
+            var inComment = false
+            for (raw in text.lineSequence()) {
+                val (stripped, open) = stripComments(raw, inComment)
+                inComment = open
+                var line = stripped.trim()
+                if (line.isEmpty())
+                    continue
+
+                if (!inBlock) {
+                    if (!importKeyword.containsMatchIn(line)) {
+                        if (declaration.containsMatchIn(line))
+                            break
+                        continue
+                    }
+
+                    line = line.removePrefix("import").trim()
+                    if (!line.startsWith("(")) {
+                        importSpec.find(line)?.let { imports.add(it.groupValues[1]) }
+                        continue
+                    }
+                    inBlock = true
+                    line = line.substring(1)
+                }
+
+                // specs of a block, one per line or separated by `;`, up to `)`
+                val end = line.indexOf(')')
+                for (spec in (if (end == -1) line else line.substring(0, end)).split(';'))
+                    importSpec.find(spec.trim())?.let { imports.add(it.groupValues[1]) }
+                if (end != -1)
+                    inBlock = false
+            }
+            return imports
+        }
+    }
+
+    override fun after(events: List<VFileEvent>) {
+        val changedDirs = mutableSetOf<String>()
+        for (event in events) {
+            // content change keeps the file set, others (create / delete / move / rename / copy) might not
+            val structural = event !is VFileContentChangeEvent
+            val paths = listOfNotNull(
+                event.path,
+                (event as? VFileMoveEvent)?.oldPath,
+                (event as? VFilePropertyChangeEvent)?.takeIf { it.isRename }?.oldPath
+            )
+
+            for (path in paths) {
+                val moduleFile = path.endsWith("/go.mod") || path.endsWith("/go.sum")
+                if (!path.endsWith(".go") && !moduleFile)
+                    continue
+
+                val file = Paths.get(path)
+                val dir = file.parent?.toString() ?: continue
+                if (moduleFile) {
+                    GoImportGraph.moduleChanged(dir)
+                    continue
+                }
+
+                changedDirs.add(dir)
+                generations.computeIfAbsent(dir) { AtomicLong() }.incrementAndGet()
+                contents[dir]?.let {
+                    it.files.remove(file.fileName.toString())
+                    if (structural)
+                        it.names = null
+                }
+            }
+        }
+
+        if (changedDirs.isNotEmpty())
+            GoImportGraph.relintDependents(changedDirs)
+    }
+}
@@ -0,0 +1,273 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.service
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.io.FileUtil
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import java.io.IOException
+import java.nio.charset.Charset
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+
+// a mirror of project path under IDE system dir, where unsaved documents are written, so golangci-lint sees the buffers
+// only what a lint reads is mirrored: Go / assembly sources, module & workspace files, vendor/modules.txt, golangci config
+// files are hardlinked (copied if not possible) once, then kept up to date from VFS events; only dirty files are real writes
+// go.mod / go.work are copied with relative paths leaving the project pointed to the real location, a go.work above project path is brought in
+// every write lands by rename, so a run reading the mirror meanwhile sees either the old or the new file, never a partial one
+// no VFS event is raised for the mirror, each write bumps the package generation itself, so a run of an older buffer is superseded
+// reported filenames are relative to running dir, which keeps the same layout in the mirror, so results map back as is
+class GoShadowWorkspace(private val project: Project) : Disposable {
+    companion object {
+        private val sourceSuffixes = listOf(".go", ".s", ".c", ".h")
+        private val moduleFiles = setOf("go.mod", "go.work")
+        private val otherFiles = setOf("go.sum", "go.work.sum", "modules.txt")
+
+        @JvmStatic
+        fun getInstance(project: Project): GoShadowWorkspace = project.service()
+
+        private fun relevant(name: String): Boolean =
+            sourceSuffixes.any { name.endsWith(it) } || name in moduleFiles || name in otherFiles || name.startsWith(".golangci.")
+
+        private fun isPath(token: String): Boolean =
+            token == "." || token == ".." || token.startsWith("./") || token.startsWith("../")
+
+        // relative paths of go.mod `replace` / go.work `use` & `replace`, read in realDir, written to mirrorDir
+        // in project: the mirrored dir, relative from mirrorDir; out of project: the real dir, absolute
+        internal fun rewritePaths(text: String, realDir: Path, mirrorDir: Path, projectPath: Path, mirrorRoot: Path, toRunningPath: (String) -> String): String =
+            text.lines().joinToString("\n") { line ->
+                line.substringBefore("//").split(Regex("\\s+")).fold(line) { acc, token ->
+                    val path = token.trim('"')
+                    if (!isPath(path))
+                        return@fold acc
+
+                    val real = realDir.resolve(path).normalize()
+                    val replaced =
+                        if (real.startsWith(projectPath))
+                            mirrorDir.relativize(mirrorRoot.resolve(projectPath.relativize(real).toString())).joinToString("/")
+                                .let { if (it.isEmpty()) "." else if (it.startsWith("..")) it else "./$it" }
+                        else toRunningPath(real.toString())
+                    if (replaced == path) acc else acc.replaceFirst(token, token.replace(path, replaced))
+                }
+            }
+    }
+
+    private val base: Path by lazy {
+        Paths.get(PathManager.getSystemPath(), "go-linter", "shadow", LintInvocation.hash(project.locationHash).take(16))
+    }
+    // mirrors of an earlier project path might still be read by runs, a new one goes aside
+    private var generation = 0
+    private var root: Path = Paths.get("")
+    private var source: Path? = null
+    private var toRunningPath: (String) -> String = { it }
+    // go.work found above project path <> its modified time when brought in
+    private var outerWork: Pair<Path, Long>? = null
+
+    // relative paths changed on disk since last sync
+    private val stale = ConcurrentHashMap.newKeySet<String>()
+    // relative path <> modification stamp of the unsaved document written there instead of the real file
+    private val overlaid = mutableMapOf<String, Long>()
+
+    private class Overlay(val relative: String, val text: CharSequence, val charset: Charset, val stamp: Long)
+
+    init {
+        project.messageBus.connect(this).subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+            override fun after(events: List<VFileEvent>) {
+                val src = source ?: return
+                for (event in events) {
+                    val paths = listOfNotNull(
+                        event.path,
+                        (event as? VFileMoveEvent)?.oldPath,
+                        (event as? VFilePropertyChangeEvent)?.takeIf { it.isRename }?.oldPath
+                    )
+                    for (path in paths.map { Paths.get(it) }) {
+                        if (path.startsWith(src))
+                            stale.add(src.relativize(path).toString())
+                    }
+                }
+            }
+        })
+    }
+
+    override fun dispose() {
+        if (source != null) {
+            FileUtil.asyncDelete(base.toFile())
+            GoPackageChangeTracker.forget(base.toString())
+        }
+    }
+
+    // mirror of projectPath with unsaved documents applied, returns the mirror root
+    // toRunningPath: converts a host path to where golangci-lint runs, for paths written into go.mod / go.work
+    @Synchronized
+    fun sync(projectPath: Path, toRunningPath: (String) -> String): Path {
+        if (source != projectPath) {
+            if (source != null) {
+                FileUtil.asyncDelete(root.toFile())
+                GoPackageChangeTracker.forget(root.toString())
+            }
+            root = base.resolve((generation++).toString())
+            FileUtil.delete(root)
+            stale.clear()
+            overlaid.clear()
+            outerWork = null
+            this.toRunningPath = toRunningPath
+            source = projectPath
+            mirror(projectPath, root)
+        }
+
+        // changed on disk
+        for (relative in stale.toList()) {
+            stale.remove(relative)
+            if (relative !in overlaid)
+                link(projectPath.resolve(relative), root.resolve(relative))
+        }
+        syncOuterWork(projectPath)
+
+        // unsaved documents under project path, snapshot of their text
+        val dirty = runReadAction {
+            val fileDocumentManager = FileDocumentManager.getInstance()
+            fileDocumentManager.unsavedDocuments.mapNotNull { doc ->
+                val file = fileDocumentManager.getFile(doc) ?: return@mapNotNull null
+                val path = Paths.get(file.path)
+                if (path.startsWith(projectPath) && relevant(file.name)) Overlay(projectPath.relativize(path).toString(), doc.immutableCharSequence, file.charset, doc.modificationStamp)
+                else null
+            }
+        }
+
+        // saved or dropped since, back to the real file
+        val dirtyPaths = dirty.map { it.relative }.toSet()
+        for (relative in overlaid.keys - dirtyPaths)
+            link(projectPath.resolve(relative), root.resolve(relative))
+        overlaid.keys.retainAll(dirtyPaths)
+
+        for (overlay in dirty) {
+            // not edited since last written
+            if (overlaid[overlay.relative] == overlay.stamp)
+                continue
+
+            val target = root.resolve(overlay.relative)
+            var text = overlay.text.toString()
+            if (target.fileName.toString() in moduleFiles)
+                text = rewritePaths(text, projectPath.resolve(overlay.relative).parent, target.parent, projectPath, root, toRunningPath)
+            // never write thru a hardlink, that writes the real file; a fresh file renamed over it breaks the link
+            replace(target) { Files.writeString(it, text, overlay.charset) }
+            overlaid[overlay.relative] = overlay.stamp
+        }
+
+        return root
+    }
+
+    // a go.work in a parent of project path is not seen from the mirror, write it to mirror root with paths rewritten
+    private fun syncOuterWork(projectPath: Path) {
+        if (Files.exists(projectPath.resolve("go.work")))
+            return
+
+        var cur = projectPath.parent
+        while (cur != null && !Files.isRegularFile(cur.resolve("go.work")))
+            cur = cur.parent
+        val work = cur?.resolve("go.work") ?: return
+
+        try {
+            val modified = Files.getLastModifiedTime(work).toMillis()
+            if (outerWork == work to modified)
+                return
+
+            val text = rewritePaths(Files.readString(work), work.parent, root, projectPath, root, toRunningPath)
+            replace(root.resolve("go.work")) { Files.writeString(it, text) }
+            work.resolveSibling("go.work.sum").takeIf { Files.isRegularFile(it) }?.let { linkFile(it, root.resolve("go.work.sum")) }
+            outerWork = work to modified
+        } catch (e: IOException) {
+            logger.info("Failed to bring $work into shadow workspace", e)
+        }
+    }
+
+    // mirror the relevant files of source tree to target, skip hidden dirs like .git / .idea
+    private fun mirror(source: Path, target: Path) {
+        Files.walkFileTree(source, object : SimpleFileVisitor<Path>() {
+            override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult =
+                if (dir != source && dir.fileName.toString().startsWith(".")) FileVisitResult.SKIP_SUBTREE
+                else FileVisitResult.CONTINUE
+
+            override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                if (attrs.isRegularFile && relevant(file.fileName.toString()))
+                    place(file, target.resolve(source.relativize(file).toString()))
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult = FileVisitResult.CONTINUE
+        })
+    }
+
+    // make target the same as source, a moved in dir is mirrored as a whole, removed if source is gone
+    private fun link(source: Path, target: Path) {
+        try {
+            when {
+                Files.isRegularFile(source) -> if (relevant(source.fileName.toString())) place(source, target)
+                Files.isDirectory(source) -> {
+                    FileUtil.delete(target)
+                    mirror(source, target)
+                }
+                else -> {
+                    FileUtil.delete(target)
+                    GoPackageChangeTracker.touch(target.parent.toString())
+                }
+            }
+        } catch (e: IOException) {
+            // file is busy, next sync tries again
+            stale.add(root.relativize(target).toString())
+        }
+    }
+
+    // module files are copied with paths rewritten, others linked
+    private fun place(source: Path, target: Path) {
+        if (source.fileName.toString() in moduleFiles) {
+            val text = rewritePaths(Files.readString(source), source.parent, target.parent, this.source ?: source.parent, root, toRunningPath)
+            replace(target) { Files.writeString(it, text) }
+        } else
+            linkFile(source, target)
+    }
+
+    // hardlink, or a copy across file systems
+    private fun linkFile(source: Path, target: Path) {
+        replace(target) {
+            try {
+                Files.createLink(it, source)
+            } catch (e: IOException) {
+                Files.copy(source, it, StandardCopyOption.COPY_ATTRIBUTES)
+            } catch (e: UnsupportedOperationException) {
+                Files.copy(source, it, StandardCopyOption.COPY_ATTRIBUTES)
+            }
+        }
+    }
+
+    // create the new file aside (a name Go ignores), then rename over target, readers of the old one are not disturbed
+    private fun replace(target: Path, create: (Path) -> Unit) {
+        Files.createDirectories(target.parent)
+        val tmp = target.resolveSibling(".${target.fileName}.${System.nanoTime()}.tmp")
+        try {
+            create(tmp)
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (e: IOException) {
+                // file system without atomic rename
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING)
+            }
+        } finally {
+            Files.deleteIfExists(tmp)
+        }
+        GoPackageChangeTracker.touch(target.parent.toString())
+    }
+}
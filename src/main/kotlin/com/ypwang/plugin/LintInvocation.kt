@@ -0,0 +1,176 @@
+package com.ypwang.plugin
+
+import com.goide.project.GoModuleSettings
+import com.intellij.openapi.module.Module
+import com.ypwang.plugin.platform.Platform
+import java.io.File
+import java.nio.file.Path
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+// everything that decides the output of a golangci-lint run
+// runningPath & parameters are in running OS format, parameters[0] is the executable and the last is the target dir
+// runtime knobs that don't change the output (like `-j`) are not part of it, see GoLinterResourceGovernor
+data class LintInvocation(
+    val runningPath: String,
+    val parameters: List<String>,
+    val vars: List<String>,
+    val env: Map<String, String>,
+    val configHash: String,
+    // identity of golangci-lint binary, changes on upgrade
+    val exeStamp: String,
+    // several package dirs linted by one run, see GoLinterExecutionPool
+    val coalesced: Boolean = false
+) {
+    companion object {
+        fun hash(vararg parts: String): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            for (part in parts) {
+                digest.update(part.toByteArray(Charsets.UTF_8))
+                // separator, avoid ("ab", "c") collides with ("a", "bc")
+                digest.update(0)
+            }
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+
+        // config path <> (modified time, size, content hash)
+        private val configHashes = ConcurrentHashMap<String, Triple<Long, Long, String>>()
+
+        // host OS path of config file, empty hash if no config used
+        // content is only hashed again when the file is touched
+        fun configHash(path: String?): String {
+            val file = path?.let(::File)?.takeIf { it.isFile } ?: return ""
+            val modified = file.lastModified()
+            val size = file.length()
+            configHashes[file.path]?.let { (m, s, hash) -> if (m == modified && s == size) return hash }
+
+            val hash = MessageDigest.getInstance("SHA-256").digest(file.readBytes()).joinToString("") { "%02x".format(it) }
+            configHashes[file.path] = Triple(modified, size, hash)
+            return hash
+        }
+
+        // running `golangci-lint version` for every lint is too costly, the binary file is identified by its modified time & size
+        // executable resolved from PATH can't be identified, stamp is its name
+        private fun exeStamp(exe: String): String =
+            File(exe).takeIf { it.isFile }?.let { "${it.lastModified()}:${it.length()}" } ?: exe
+
+        // the invocation the annotator uses for a package dir
+        // lint from project path with custom project dir enabled, otherwise lint in package dir
+        fun forPackage(platform: Platform, settings: GoLinterSettings, module: Module?, detectedConfig: Optional<String>, projectPath: Path, packageDir: Path): LintInvocation =
+            if (settings.enableCustomProjectDir)
+                build(
+                    platform, settings, module, detectedConfig,
+                    projectPath.toString(),
+                    // the relative path of package dir to running dir
+                    platform.convertToPlatformPath(projectPath.relativize(packageDir).toString().ifBlank { "." })
+                )
+            else
+                build(platform, settings, module, detectedConfig, packageDir.toString(), ".")
+
+        // detectedConfig: config file found in project path, takes precedence over the one in settings
+        fun build(platform: Platform, settings: GoLinterSettings, module: Module?, detectedConfig: Optional<String>, runningPath: String, targetDir: String): LintInvocation {
+            var exe = settings.goLinterExe
+            if (exe.isEmpty())
+                exe = platform.defaultExecutable
+
+            val parameters = mutableListOf(
+                platform.toRunningOSPath(exe), "run",
+                "--out-format", "json",
+                "--allow-parallel-runners",
+                // fix exit code on issue
+                "--issues-exit-code", "1",
+                // no issue limit
+                "--max-issues-per-linter", "0",
+                "--max-same-issues", "0"
+            )
+
+            val config = detectedConfig.or { Optional.ofNullable(settings.customConfigFile) }
+            config.ifPresentOrElse(
+                    {
+                        parameters.add("-c")
+                        parameters.add(platform.toRunningOSPath(it))
+                    },
+                    {
+                        parameters.add("--no-config")
+                        // use default linters
+                        if (settings.linterSelected) {
+                            val enabledLinters = settings.enabledLinters
+                            // no linter is selected, skip run
+                            if (enabledLinters.isEmpty())
+                                throw Exception("all linters disabled")
+
+                            parameters.add("--disable-all")
+                            parameters.add("-E")
+                            parameters.add(enabledLinters.joinToString(","))
+                        }
+                    }
+                )
+
+            // add same build tags with those in Goland
+            if (module != null) {
+                val buildTagsSettings = GoModuleSettings.getInstance(module).buildTargetSettings
+                val default = "default"
+                val buildTags = mutableListOf<String>()
+                if (buildTagsSettings.arch != default)
+                    buildTags.add(buildTagsSettings.arch)
+                if (buildTagsSettings.os != default)
+                    buildTags.add(buildTagsSettings.os)
+                buildTags.addAll(buildTagsSettings.customFlags)
+
+                if (buildTags.isNotEmpty()) {
+                    parameters.add("--build-tags")
+                    parameters.add(buildTags.joinToString(","))
+                }
+            }
+
+            parameters.add(targetDir)
+
+            val vars = listOf(Const_Path, Const_GoPath, Const_GoModule)
+            return LintInvocation(
+                platform.toRunningOSPath(runningPath),
+                parameters,
+                vars,
+                GoLinterEnvironment.getInstance(settings.project).get(platform, vars),
+                configHash(config.orElse(null)),
+                exeStamp(exe)
+            )
+        }
+    }
+
+    // the run target dir, relative to running path
+    val target: String
+        get() = parameters.last()
+
+    // target is a single package dir, not a pattern like `./...`; only such runs are merged, and their report split by dir
+    val isPackageTarget: Boolean
+        get() = !target.endsWith("...")
+
+    // fingerprint regardless of target, invocations with same base could be merged into one run
+    val baseFingerprint: String by lazy {
+        hash(
+            runningPath,
+            parameters.dropLast(1).joinToString("\u0000"),
+            env.entries.sortedBy { it.key }.joinToString("\u0000") { "${it.key}=${it.value}" },
+            configHash,
+            exeStamp
+        )
+    }
+
+    val fingerprint: String by lazy { hash(baseFingerprint, target) }
+
+    // fingerprint with the project root taken out, same for clones / worktrees of a repo
+    // root: project path in running OS format
+    fun portableFingerprint(root: String): String {
+        val relative = { s: String -> s.replace(root, "\$ROOT") }
+        return hash(
+            relative(runningPath),
+            parameters.joinToString("\u0000", transform = relative),
+            env.entries.sortedBy { it.key }.joinToString("\u0000") { "${it.key}=${it.value}" },
+            configHash,
+            exeStamp
+        )
+    }
+
+    fun withTargets(targets: List<String>): LintInvocation = copy(parameters = parameters.dropLast(1) + targets, coalesced = targets.size > 1)
+}
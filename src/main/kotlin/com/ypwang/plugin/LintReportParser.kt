@@ -0,0 +1,150 @@
+package com.ypwang.plugin
+
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.ypwang.plugin.model.InlineFix
+import com.ypwang.plugin.model.LineRange
+import com.ypwang.plugin.model.LintIssue
+import com.ypwang.plugin.model.Position
+import com.ypwang.plugin.model.Replacement
+import java.io.Reader
+import java.util.*
+
+// streaming parser of golangci-lint json report, no reflection & no intermediate tree
+// issues are bucketed by file while reading, only `Issues` is read, `Report` is skipped
+object LintReportParser {
+    // reported filename <> issues sorted by line, in filename order
+    fun parse(reader: Reader): SortedMap<String, List<LintIssue>> {
+        val buckets = TreeMap<String, MutableList<LintIssue>>()
+        JsonReader(reader).use { json ->
+            json.beginObject()
+            while (json.hasNext()) {
+                when (json.nextName()) {
+                    "Issues" -> json.nullable {
+                        beginArray()
+                        while (hasNext()) {
+                            val issue = readIssue(this, buckets)
+                            buckets.getValue(issue.Pos.Filename).add(issue)
+                        }
+                        endArray()
+                    }
+                    else -> json.skipValue()
+                }
+            }
+            json.endObject()
+        }
+
+        // golangci-lint mostly reports in order already, stable sort keeps the original order of same line
+        for (issues in buckets.values)
+            issues.sortBy { it.Pos.Line }
+        @Suppress("UNCHECKED_CAST")
+        return buckets as SortedMap<String, List<LintIssue>>
+    }
+
+    private inline fun <T> JsonReader.nullable(read: JsonReader.() -> T): T? =
+        if (peek() == JsonToken.NULL) {
+            nextNull()
+            null
+        } else read()
+
+    private inline fun JsonReader.fields(read: JsonReader.(String) -> Unit) {
+        beginObject()
+        while (hasNext())
+            read(nextName())
+        endObject()
+    }
+
+    private fun JsonReader.stringList(): List<String> {
+        val list = mutableListOf<String>()
+        beginArray()
+        while (hasNext())
+            list.add(nextString())
+        endArray()
+        return list
+    }
+
+    // buckets: also used to share the filename string of issues in the same file
+    private fun readIssue(json: JsonReader, buckets: TreeMap<String, MutableList<LintIssue>>): LintIssue {
+        var fromLinter = ""
+        var text = ""
+        var pos = Position("", 0, 0, 0)
+        var sourceLines: List<String>? = null
+        var replacement: Replacement? = null
+        var lineRange: LineRange? = null
+        json.fields { name ->
+            when (name) {
+                "FromLinter" -> fromLinter = nextString()
+                "Text" -> text = nextString()
+                "Pos" -> pos = readPosition(this)
+                "SourceLines" -> sourceLines = nullable { stringList() }
+                "Replacement" -> replacement = nullable { readReplacement(this) }
+                "LineRange" -> lineRange = nullable { readLineRange(this) }
+                else -> skipValue()
+            }
+        }
+
+        val filename = buckets.ceilingKey(pos.Filename)?.takeIf { it == pos.Filename }
+            ?: pos.Filename.also { buckets[it] = mutableListOf() }
+        return LintIssue(fromLinter, text, pos.copy(Filename = filename), sourceLines, replacement, lineRange)
+    }
+
+    private fun readPosition(json: JsonReader): Position {
+        var filename = ""
+        var offset = 0
+        var line = 0
+        var column = 0
+        json.fields { name ->
+            when (name) {
+                "Filename" -> filename = nextString()
+                "Offset" -> offset = nextInt()
+                "Line" -> line = nextInt()
+                "Column" -> column = nextInt()
+                else -> skipValue()
+            }
+        }
+        return Position(filename, offset, line, column)
+    }
+
+    private fun readReplacement(json: JsonReader): Replacement {
+        var needOnlyDelete = false
+        var newLines: List<String>? = null
+        var inline: InlineFix? = null
+        json.fields { name ->
+            when (name) {
+                "NeedOnlyDelete" -> needOnlyDelete = nextBoolean()
+                "NewLines" -> newLines = nullable { stringList() }
+                "Inline" -> inline = nullable { readInlineFix(this) }
+                else -> skipValue()
+            }
+        }
+        return Replacement(needOnlyDelete, newLines, inline)
+    }
+
+    private fun readInlineFix(json: JsonReader): InlineFix {
+        var startCol = 0
+        var length = 0
+        var newString = ""
+        json.fields { name ->
+            when (name) {
+                "StartCol" -> startCol = nextInt()
+                "Length" -> length = nextInt()
+                "NewString" -> newString = nextString()
+                else -> skipValue()
+            }
+        }
+        return InlineFix(startCol, length, newString)
+    }
+
+    private fun readLineRange(json: JsonReader): LineRange {
+        var from = 0
+        var to = 0
+        json.fields { name ->
+            when (name) {
+                "From" -> from = nextInt()
+                "To" -> to = nextInt()
+                else -> skipValue()
+            }
+        }
+        return LineRange(from, to)
+    }
+}
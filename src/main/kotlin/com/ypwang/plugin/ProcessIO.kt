@@ -0,0 +1,273 @@
+package com.ypwang.plugin
+
+import com.intellij.openapi.util.SystemInfo
+import com.ypwang.plugin.model.CapturedOutput
+import com.ypwang.plugin.model.ProcessOptions
+import com.ypwang.plugin.model.RunProcessResult
+import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.OutputStream
+import java.io.Reader
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+// thrown when a running process is killed by cancellation, carry the CPU time it consumed (ms)
+class RunCancelledException(val cpuTime: Long) : CancellationException("process cancelled")
+
+// expose the internal buffer, so it could be read without a copy
+private class ExposedByteArrayOutputStream(size: Int) : ByteArrayOutputStream(size) {
+    fun inputStream(): InputStream = ByteArrayInputStream(buf, 0, count)
+}
+
+private class ByteBufferInputStream(private val buffer: ByteBuffer) : InputStream() {
+    override fun read(): Int = if (buffer.hasRemaining()) buffer.get().toInt() and 0xff else -1
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        if (!buffer.hasRemaining())
+            return -1
+        val count = minOf(len, buffer.remaining())
+        buffer.get(b, off, count)
+        return count
+    }
+
+    override fun available(): Int = buffer.remaining()
+}
+
+// keep at most `cap` bytes, count the rest
+// beyond `spillThreshold`, kept bytes are moved to a temp file, so a huge report doesn't sit in heap
+// the temp file is removed once captured, or discarded if the output is not taken
+class BoundedOutputBuffer(private val cap: Int, private val spillThreshold: Int = Int.MAX_VALUE) {
+    companion object {
+        // spilled files still mapped when captured (Windows can't remove those), removed on a later try
+        private val undeleted = ConcurrentLinkedQueue<Path>()
+
+        private fun delete(file: Path): Boolean =
+            try {
+                Files.deleteIfExists(file)
+                true
+            } catch (e: IOException) {
+                false
+            }
+
+        private fun sweep() {
+            undeleted.removeIf(::delete)
+        }
+    }
+
+    private var buffer = ExposedByteArrayOutputStream(minOf(cap, spillThreshold, 8 * 1024))
+    private var spillFile: Path? = null
+    private var spillStream: OutputStream? = null
+    private var kept = 0
+    // writing is done, by the reader thread
+    private var closed = false
+    // output is not taken, drop spilled bytes once writing is done
+    private var discarded = false
+
+    var total = 0L
+        private set
+
+    val truncated: Boolean
+        get() = total > cap
+
+    fun write(b: ByteArray, len: Int) {
+        total += len
+        val count = minOf(cap - kept, len)
+        if (count <= 0)
+            return
+
+        if (spillStream == null && kept + count > spillThreshold)
+            spill()
+        (spillStream ?: buffer).write(b, 0, count)
+        kept += count
+    }
+
+    @Synchronized
+    private fun spill() {
+        sweep()
+        val file = Files.createTempFile("golangci-lint-", ".out")
+        try {
+            spillStream = BufferedOutputStream(Files.newOutputStream(file), 64 * 1024).also { buffer.writeTo(it) }
+        } catch (e: IOException) {
+            spillStream?.close()
+            spillStream = null
+            delete(file)
+            throw e
+        }
+        spillFile = file
+        buffer = ExposedByteArrayOutputStream(0)
+    }
+
+    // no more output, drop the spilled bytes if the process is killed
+    @Synchronized
+    fun close(discard: Boolean) {
+        closed = true
+        try {
+            spillStream?.close()
+        } finally {
+            if (discard || discarded)
+                spillFile?.let(::delete)
+        }
+    }
+
+    // the output won't be captured (run failed or interrupted), spilled bytes are dropped now, or once writing is done
+    @Synchronized
+    fun discard() {
+        discarded = true
+        if (closed)
+            spillFile?.let(::delete)
+    }
+
+    fun toString(encoding: Charset): String = capture(encoding).reader().use { it.readText() }
+
+    // read the kept bytes as is, without decoding them into a String first
+    // spilled bytes are memory mapped, the file is removed right away, the mapping stays valid until it's collected
+    // (on Windows a mapped file can't be removed, it's tried again on later spills & captures)
+    fun capture(encoding: Charset): CapturedOutput {
+        val file = spillFile
+            ?: return object : CapturedOutput {
+                override fun reader(): Reader = InputStreamReader(buffer.inputStream(), encoding)
+            }
+
+        sweep()
+        val mapped = try {
+            FileChannel.open(file, StandardOpenOption.READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+        } catch (e: IOException) {
+            delete(file)
+            throw e
+        }
+        if (!delete(file))
+            undeleted.add(file)
+        return object : CapturedOutput {
+            override fun reader(): Reader = InputStreamReader(ByteBufferInputStream(mapped.duplicate()), encoding)
+        }
+    }
+}
+
+// process output is drained by a shared pool, instead of 2 new threads per process
+// (virtual threads would fit better, but plugin targets JVM 17)
+private object OutputReaderPool {
+    private const val BufferSize = 8 * 1024
+
+    private val counter = AtomicInteger()
+    private val executor: ExecutorService = Executors.newCachedThreadPool { r ->
+        Thread(r, "Go linter output reader ${counter.incrementAndGet()}").apply { isDaemon = true }
+    }
+
+    fun fetch(inputStream: InputStream, consumer: BoundedOutputBuffer, stopped: () -> Boolean): Future<*> =
+        executor.submit {
+            try {
+                val buf = ByteArray(BufferSize)
+                while (!stopped()) {
+                    val count = inputStream.read(buf)
+                    if (count == -1) break
+                    consumer.write(buf, count)
+                }
+            } catch (e: IOException) {
+                // stream is closed when the process get killed
+                if (!stopped())
+                    logger.error(e)
+            } finally {
+                consumer.close(stopped())
+            }
+        }
+}
+
+// CPU time (ms) of the process and all its descendants
+private fun cpuTime(process: Process): Long =
+    (sequenceOf(process.toHandle()) + process.descendants().asSequence())
+        .sumOf { handle -> handle.info().totalCpuDuration().map { it.toMillis() }.orElse(0) }
+
+// resident memory (bytes) of the process and all its descendants, only available on Linux
+private fun residentMemory(process: Process): Long {
+    if (!SystemInfo.isLinux)
+        return 0
+
+    return (sequenceOf(process.toHandle()) + process.descendants().asSequence()).sumOf { handle ->
+        try {
+            // VmRSS:     12345 kB
+            File("/proc/${handle.pid()}/status").useLines { lines ->
+                lines.firstOrNull { it.startsWith("VmRSS:") }
+                    ?.split(Regex("\\s+"))?.getOrNull(1)?.toLongOrNull()?.times(1024) ?: 0L
+            }
+        } catch (e: IOException) {
+            // process exited
+            0L
+        }
+    }
+}
+
+fun fetchProcessOutput(process: Process, encoding: Charset): RunProcessResult =
+    fetchProcessOutput(process, ProcessOptions(encoding))
+
+fun fetchProcessOutput(process: Process, options: ProcessOptions): RunProcessResult {
+    val start = System.currentTimeMillis()
+    val killed = AtomicBoolean(false)
+    val outputConsumer = BoundedOutputBuffer(options.outputCap, options.spillThreshold)
+    val outputReader = OutputReaderPool.fetch(process.inputStream, outputConsumer, killed::get)
+    val errorConsumer = BoundedOutputBuffer(options.outputCap)
+    val errorReader = OutputReaderPool.fetch(process.errorStream, errorConsumer, killed::get)
+    var captured = false
+
+    try {
+        var cpuTime = 0L
+        var peakMemory = 0L
+        // poll instead of blocking wait, so we're able to react on cancellation
+        while (!process.waitFor(100, TimeUnit.MILLISECONDS)) {
+            // sample while alive, the info is gone once the process exits
+            cpuTime = maxOf(cpuTime, cpuTime(process))
+            peakMemory = maxOf(peakMemory, residentMemory(process))
+            if (options.cancelled()) {
+                // stop reading, and kill the whole process tree, golangci-lint spawns `go` sub-processes
+                killed.set(true)
+                process.descendants().forEach { it.destroyForcibly() }
+                process.destroyForcibly()
+                throw RunCancelledException(cpuTime)
+            }
+        }
+
+        errorReader.get()
+        outputReader.get()
+
+        if (outputConsumer.truncated)
+            logger.warn("Process output exceeds ${options.outputCap} bytes, ${outputConsumer.total} bytes in total")
+
+        val output = outputConsumer.capture(options.encoding)
+        captured = true
+        return RunProcessResult(
+            process.exitValue(),
+            output,
+            errorConsumer.toString(options.encoding),
+            cpuTime,
+            peakMemory,
+            System.currentTimeMillis() - start,
+            outputConsumer.total,
+            errorConsumer.total,
+            outputConsumer.truncated
+        )
+    } catch (e: InterruptedException) {
+        logger.error(e)
+    } finally {
+        // killed, interrupted or failed, nobody reads the spilled output
+        if (!captured)
+            outputConsumer.discard()
+    }
+
+    return RunProcessResult(-1, "", "")
+}
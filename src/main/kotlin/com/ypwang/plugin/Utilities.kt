@@ -7,14 +7,15 @@ import com.intellij.notification.NotificationGroup
 import com.intellij.notification.NotificationGroupManager
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.project.Project
+import com.intellij.util.diff.Diff
+import com.intellij.util.diff.FilesTooBigForDiffException
 import com.ypwang.plugin.model.GithubRelease
 import com.ypwang.plugin.model.GoLinter
+import com.ypwang.plugin.model.LintIssue
+import com.ypwang.plugin.model.LintRunResult
 import com.ypwang.plugin.model.RunProcessResult
 import org.apache.http.client.methods.HttpGet
 import org.apache.http.impl.client.CloseableHttpClient
-import java.io.ByteArrayOutputStream
-import java.io.IOException
-import java.io.InputStream
 import java.io.InputStreamReader
 import java.nio.charset.Charset
 import java.nio.file.Path
@@ -46,46 +47,75 @@ fun findCustomConfigInPath(path: String?): Optional<String> {
     return Optional.empty()
 }
 
-private class OutputReader(val inputStream: InputStream, val consumer: ByteArrayOutputStream) : Runnable {
-    override fun run() = try {
-        val buf = ByteArray(1024)
-        while (true) {
-            val count = inputStream.read(buf)
-            if (count == -1) break
-            consumer.write(buf, 0, count)
-        }
-    } catch (e: IOException) {
-        Logger.getInstance(this.javaClass).error(e)
-    }
+// 64-bit fingerprint (FNV-1a) of a source line, text[start, end), hashed in place so a document line needs no substring
+// a trailing '\r' is left out, CRLF files on disk hash the same as their documents
+fun lineHash(text: CharSequence, start: Int = 0, end: Int = text.length): Long {
+    val until = if (end > start && text[end - 1] == '\r') end - 1 else end
+    var hash = -0x340d631b7bdddcdbL       // offset basis 0xcbf29ce484222325
+    for (i in start until until)
+        hash = (hash xor text[i].code.toLong()) * 0x100000001b3L
+    return hash
+}
 
-    companion object {
-        fun fetch(inputStream: InputStream, consumer: ByteArrayOutputStream): Thread {
-            val thread = Thread(OutputReader(inputStream, consumer))
-            thread.start()
-            return thread
-        }
+// line fingerprint folded to 32 bits, what line snapshots are made of
+fun foldHash(hash: Long): Int = (hash xor (hash ushr 32)).toInt()
+
+// folded fingerprint of every line of text, line count same as a document of the text
+fun lineHashes(text: CharSequence): IntArray {
+    val hashes = IntArray(text.count { it == '\n' } + 1)
+    var start = 0
+    for (i in hashes.indices) {
+        val end = text.indexOf('\n', start).let { if (it == -1) text.length else it }
+        hashes[i] = foldHash(lineHash(text, start, end))
+        start = end + 1
     }
+    return hashes
 }
 
-fun fetchProcessOutput(process: Process, encoding: Charset): RunProcessResult {
-    val outputConsumer = ByteArrayOutputStream()
-    val outputThread = OutputReader.fetch(process.inputStream, outputConsumer)
-    val errorConsumer = ByteArrayOutputStream()
-    val errorThread = OutputReader.fetch(process.errorStream, errorConsumer)
-
-    try {
-        val returnCode = process.waitFor()
-        errorThread.join()
-        outputThread.join()
-
-        return RunProcessResult(returnCode, outputConsumer.toString(encoding), errorConsumer.toString(encoding))
-    } catch (e: InterruptedException) {
-        logger.error(e)
+// maps each line of before to its line in after, -1 if the line is changed or removed, by a line diff (Myers) of snapshots
+// null if too big to diff
+fun relocateLines(before: IntArray, after: IntArray): IntArray? {
+    var change = try {
+        Diff.buildChanges(before, after)
+    } catch (e: FilesTooBigForDiffException) {
+        return null
     }
 
-    return RunProcessResult(-1, "", "")
+    val mapping = IntArray(before.size)
+    var from = 0
+    var to = 0
+    // lines between changes are kept, only shifted
+    while (change != null) {
+        while (from < change.line0)
+            mapping[from++] = to++
+        repeat(change.deleted) { mapping[from++] = -1 }
+        to += change.inserted
+        change = change.link
+    }
+    while (from < before.size)
+        mapping[from++] = to++
+    return mapping
 }
 
+// fingerprint of the line issue reported at, null if linter doesn't tell (like 'unused')
+val LintIssue.sourceHash: Long?
+    get() = SourceHash ?: SourceLines?.firstOrNull()?.let { lineHash(it) }
+
+// reported filename is relative to running dir, in running OS format
+fun reportedDir(filename: String): String =
+    filename.lastIndexOfAny(charArrayOf('/', '\\')).let { if (it == -1) "." else filename.substring(0, it) }
+
+fun parseLintRunResult(result: RunProcessResult): LintRunResult =
+    // report is cut, unable to parse
+    if (result.truncated) LintRunResult(null, result)
+    else when (result.returnCode) {
+        // 0: no hint found; 1: hint found
+        0, 1 ->
+            LintRunResult(result.stdoutReader().use { LintReportParser.parse(it) }, result)
+        // run error
+        else -> LintRunResult(null, result)
+    }
+
 fun parseLinters(project: Project, result: RunProcessResult): List<GoLinter> {
     when (result.returnCode) {
         0 -> {
@@ -0,0 +1,69 @@
+package com.ypwang.plugin.handler
+
+import com.intellij.codeInsight.intention.FileModifier
+import com.intellij.codeInsight.intention.IntentionAction
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.project.Project
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiFile
+import com.intellij.psi.SmartPsiElementPointer
+import com.ypwang.plugin.logger
+import com.ypwang.plugin.model.LintIssue
+
+// fixes of an issue, asked from handler only when intentions are shown (Alt+Enter / light bulb), most issues never get there
+// resolved once, then kept along with the annotation; each fix takes a slot, slots beyond what handler suggests are not available
+// stamp: modification stamp of the document the line number is valid for, once edited the annotation is rebuilt anyway
+class LazySuggestedFixes(
+    private val handler: ProblemHandler,
+    private val issue: LintIssue,
+    private val lineNumber: Int,
+    private val file: SmartPsiElementPointer<PsiFile>,
+    private val stamp: Long
+) {
+    companion object {
+        // handlers suggest 2 at most for now
+        private const val MaxFixes = 4
+    }
+
+    @Volatile private var fixes: Array<IntentionAction>? = null
+
+    // to register on the annotation
+    val actions: Array<IntentionAction> = Array(MaxFixes) { Slot(it) }
+
+    private fun resolve(): Array<IntentionAction>? {
+        fixes?.let { return it }
+
+        val psiFile = file.element
+        val document = psiFile?.let { PsiDocumentManager.getInstance(it.project).getDocument(it) }
+        if (document == null || document.modificationStamp != stamp)
+            return null
+
+        return handler.suggestFix(psiFile, document, issue, lineNumber).first.also {
+            if (it.size > MaxFixes)
+                logger.warn("${issue.FromLinter} suggests ${it.size} fixes, only $MaxFixes shown")
+            fixes = it
+        }
+    }
+
+    private inner class Slot(private val index: Int) : IntentionAction {
+        private val fix: IntentionAction?
+            get() = fixes?.getOrNull(index)
+
+        override fun getText(): String = fix?.text ?: familyName
+        override fun getFamilyName(): String = fix?.familyName ?: "Fix '${issue.FromLinter}' issue"
+        override fun startInWriteAction(): Boolean = fix?.startInWriteAction() ?: true
+        override fun isAvailable(project: Project, editor: Editor?, file: PsiFile?): Boolean =
+            resolve()?.getOrNull(index)?.isAvailable(project, editor, file) == true
+
+        override fun invoke(project: Project, editor: Editor?, file: PsiFile?) {
+            resolve()?.getOrNull(index)?.invoke(project, editor, file)
+        }
+
+        override fun getElementToMakeWritable(currentFile: PsiFile): PsiElement? =
+            fix?.getElementToMakeWritable(currentFile) ?: currentFile
+
+        override fun getFileModifierForPreview(target: PsiFile): FileModifier? =
+            fix?.getFileModifierForPreview(target)
+    }
+}
@@ -46,9 +46,13 @@ abstract class ProblemHandler {
             NonAvailableFix
         }
 
-        return fix to (range ?: calcPos(document, issue, overrideLine).let { TextRange.create(it, maxOf(document.getLineEndOffset(overrideLine), it)) })
+        return fix to (range ?: defaultRange(document, issue, overrideLine))
     }
 
+    // from reported column to line end, no PSI involved
+    fun defaultRange(document: Document, issue: LintIssue, overrideLine: Int): TextRange =
+        calcPos(document, issue, overrideLine).let { TextRange.create(it, maxOf(document.getLineEndOffset(overrideLine), it)) }
+
     open fun description(issue: LintIssue): String = "${issue.Text} (${issue.FromLinter})"
     abstract fun doSuggestFix(file: PsiFile, document: Document, issue: LintIssue, overrideLine: Int): Pair<Array<IntentionAction>, TextRange?>
 }
\ No newline at end of file
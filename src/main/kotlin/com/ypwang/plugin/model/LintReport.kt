@@ -31,7 +31,9 @@ data class LintIssue(
     val Pos: Position,
     val SourceLines: List<String>?,
     val Replacement: Replacement?,
-    val LineRange: LineRange?
+    val LineRange: LineRange?,
+    // fingerprint of the first source line, kept instead of SourceLines once cached
+    val SourceHash: Long? = null
 )
 
 data class Linter(
@@ -0,0 +1,9 @@
+package com.ypwang.plugin.model
+
+// outcome of a golangci-lint run for one target package
+// issues are bucketed by reported filename, in filename order & sorted by line if the run succeed
+// or null if failed, check `process` for reason
+class LintRunResult(
+    val files: Map<String, List<LintIssue>>?,
+    val process: RunProcessResult
+)
@@ -1,7 +1,56 @@
 package com.ypwang.plugin.model
 
-data class RunProcessResult(
+import java.io.Reader
+import java.io.StringReader
+import java.nio.charset.Charset
+
+// captured stdout of a process, decoded on demand
+interface CapturedOutput {
+    fun reader(): Reader
+
+    companion object {
+        fun of(text: String): CapturedOutput = object : CapturedOutput {
+            override fun reader(): Reader = StringReader(text)
+        }
+    }
+}
+
+class RunProcessResult(
     val returnCode: Int,
-    val stdout: String,
-    val stderr: String
-)
\ No newline at end of file
+    private val output: CapturedOutput,
+    val stderr: String,
+    // CPU time consumed by the process tree in ms, 0 if not measured
+    val cpuTime: Long = 0,
+    // peak resident memory of the process tree in bytes, 0 if not measured
+    val peakMemory: Long = 0,
+    // wall time from start to exit in ms
+    val wallTime: Long = 0,
+    // bytes the process wrote to stdout / stderr, including those dropped beyond cap
+    val stdoutBytes: Long = 0,
+    val stderrBytes: Long = 0,
+    // stdout exceeds output cap, and is cut
+    val truncated: Boolean = false
+) {
+    constructor(returnCode: Int, stdout: String, stderr: String) : this(returnCode, CapturedOutput.of(stdout), stderr)
+
+    // decoded on first access, large report should be read thru `stdoutReader` instead
+    val stdout: String by lazy { output.reader().use { it.readText() } }
+
+    fun stdoutReader(): Reader = output.reader()
+
+    override fun toString(): String =
+        "RunProcessResult(returnCode=$returnCode, stdout=$stdout, stderr=$stderr, cpuTime=$cpuTime, peakMemory=$peakMemory, wallTime=$wallTime, truncated=$truncated)"
+}
+
+// how to run a process and capture its output
+data class ProcessOptions @JvmOverloads constructor(
+    val encoding: Charset = Charset.defaultCharset(),
+    // the process tree is killed once it turns true
+    val cancelled: () -> Boolean = { false },
+    // env values set as is, on top of inherited & platform vars
+    val extraEnv: Map<String, String> = mapOf(),
+    // max bytes kept for stdout / stderr each, the rest is counted and dropped
+    val outputCap: Int = Int.MAX_VALUE,
+    // stdout beyond this many bytes is moved off heap, to a temp file read thru memory mapping
+    val spillThreshold: Int = Int.MAX_VALUE
+)
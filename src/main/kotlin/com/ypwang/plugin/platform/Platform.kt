@@ -13,13 +13,13 @@ import com.intellij.openapi.vfs.VirtualFileManager
 import com.intellij.util.EnvironmentUtil
 import com.ypwang.plugin.*
 import com.ypwang.plugin.model.GithubRelease
+import com.ypwang.plugin.model.ProcessOptions
 import com.ypwang.plugin.model.RunProcessResult
 import org.apache.http.client.methods.HttpGet
 import org.apache.http.impl.client.HttpClientBuilder
 import java.io.File
 import java.io.FileOutputStream
 import java.io.InputStream
-import java.nio.charset.Charset
 import java.nio.file.Paths
 import java.util.*
 
@@ -152,15 +152,17 @@ abstract class Platform(protected val project: Project) {
     open fun getEnvMap(vars: List<String>): Map<String, String> =
         vars.associateWith { envOverride[it]?.invoke(project) ?: System.getenv(it) ?: "" }
     // run process on running OS. PATH in params or runningDir must be in running OS format
-    open fun runProcess(params: List<String>, runningDir: String?, vars: List<String>, encoding: Charset = Charset.defaultCharset()): RunProcessResult =
+    open fun runProcess(params: List<String>, runningDir: String?, vars: List<String>, options: ProcessOptions = ProcessOptions()): RunProcessResult =
         fetchProcessOutput(
             ProcessBuilder(params).apply {
                 if (runningDir != null)
                     this.directory(File(runningDir))
                 val curEnv = this.environment()
                 getEnvMap(vars).forEach { kv -> curEnv[kv.key] = kv.value }
+                // tuning env is a default, a value the user already set wins
+                options.extraEnv.forEach { (k, v) -> curEnv.putIfAbsent(k, v) }
             }.start(),
-            encoding
+            options
         )
     // fetch golangci-lint release for running OS (might pipe thru host OS)
     open fun fetchLatestGoLinter(destDir: String, setText: (String) -> Unit, setFraction: (Double) -> Unit, cancelled: () -> Boolean): String {
@@ -199,6 +201,8 @@ abstract class Platform(protected val project: Project) {
             .map { Paths.get(it, linterName()).toString() }
             .firstOrNull { canExecute(it) } ?: ""
     }
+    // lower the scheduling priority of the command on running OS, if supported
+    open fun withNiceness(params: List<String>, niceness: Int): List<String> = params
     open fun adjustLinterExeChooser(initial: FileChooserDescriptor): FileChooserDescriptor =
         initial.also { it.withFileFilter { vf -> this.canExecute(vf.path) } }
 }
@@ -38,6 +38,8 @@ abstract class UnixLikePlatform(project: Project) : Platform(project) {
         }.toString()
     override fun linterName(): String = LinterName
     override fun defaultPath(): String = "/usr/local/bin"
+    override fun withNiceness(params: List<String>, niceness: Int): List<String> =
+        if (niceness > 0) listOf("nice", "-n", niceness.toString()) + params else params
 }
 
 open class Linux(project: Project) : UnixLikePlatform(project) {
@@ -7,9 +7,11 @@ import com.intellij.openapi.project.Project
 import com.ypwang.plugin.Const_GoModule
 import com.ypwang.plugin.Const_GoPath
 import com.ypwang.plugin.Const_Path
+import com.ypwang.plugin.RunCancelledException
+import com.ypwang.plugin.model.CapturedOutput
+import com.ypwang.plugin.model.ProcessOptions
 import com.ypwang.plugin.model.RunProcessResult
 import java.io.File
-import java.nio.charset.Charset
 
 // host OS:    Windows
 // running OS: Linux
@@ -48,17 +50,32 @@ class WSL(project: Project, private val distribution: WSLDistribution): Linux(pr
             envOverride[v]?.invoke(project, current) { distribution.getWslPath(it)!! } ?: current
         }
     }
-    override fun runProcess(params: List<String>, runningDir: String?, vars: List<String>, encoding: Charset): RunProcessResult =
+    // the process runs thru wsl.exe, we're unable to kill the process tree inside WSL, only drop the result on cancel
+    // output is captured by WSL util, output cap is applied after the fact
+    override fun runProcess(params: List<String>, runningDir: String?, vars: List<String>, options: ProcessOptions): RunProcessResult =
         distribution.executeOnWsl(
             params,
             WSLCommandLineOptions().apply {
                 if (runningDir != null)
                     this.remoteWorkingDirectory = runningDir
                 getEnvMap(vars).forEach { (k, v) ->  this.addInitCommand("export $k='$v'") }
+                // tuning env is a default, a value the user already set in the distribution wins
+                options.extraEnv.forEach { (k, v) ->  this.addInitCommand("export $k=\"\${$k:-$v}\"") }
             },
             120000,     // a reasonable timeout
             null
-        ).let { RunProcessResult(it.exitCode, it.stdout, it.stderr) }
+        ).let {
+            if (options.cancelled())
+                throw RunCancelledException(0)
+            RunProcessResult(
+                it.exitCode,
+                CapturedOutput.of(it.stdout.take(options.outputCap)),
+                it.stderr.take(options.outputCap),
+                stdoutBytes = it.stdout.length.toLong(),
+                stderrBytes = it.stderr.length.toLong(),
+                truncated = it.stdout.length > options.outputCap
+            )
+        }
     override fun fetchLatestGoLinter(destDir: String, setText: (String) -> Unit, setFraction: (Double) -> Unit, cancelled: () -> Boolean): String {
         val d = WslPath.getDistributionByWindowsUncPath(destDir)
             ?: return super.fetchLatestGoLinter(destDir, setText, setFraction, cancelled)       // destDir is windows path
@@ -0,0 +1,42 @@
+package com.ypwang.plugin
+
+import com.ypwang.plugin.model.InlineFix
+import com.ypwang.plugin.model.LineRange
+import com.ypwang.plugin.model.LintIssue
+import com.ypwang.plugin.model.Position
+import com.ypwang.plugin.model.Replacement
+import org.junit.Assert
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+
+class GoLinterDiskCacheTest {
+    @Test
+    fun roundTripTest() {
+        val files = linkedMapOf(
+            "a.go" to listOf(
+                LintIssue("unused", "`f` is unused", Position("a.go", 10, 3, 6), null, null, null),
+                LintIssue("gocritic", "assignOp: ünïcode", Position("a.go", 0, 5, 1), listOf("a = a + 1"), Replacement(false, null, InlineFix(0, 9, "a += 1")), null)
+            ),
+            "b/b.go" to listOf(
+                LintIssue("gofmt", "File is not `gofmt`-ed", Position("b/b.go", 0, 9, 0), listOf("x := 1"), Replacement(true, listOf("\tx := 1", ""), null), LineRange(9, 10))
+            ),
+            "c.go" to listOf()
+        )
+
+        val bytes = ByteArrayOutputStream().also { out -> DataOutputStream(out).use { GoLinterDiskCache.write(it, files) } }.toByteArray()
+        val read = GoLinterDiskCache.read(ByteBuffer.wrap(bytes))
+
+        // source lines are stored as fingerprint only
+        val expected = files.mapValues { (_, issues) -> issues.map { it.copy(SourceLines = null, SourceHash = it.sourceHash) } }
+        Assert.assertEquals(expected, read)
+        Assert.assertEquals(files.keys.toList(), read.keys.toList())
+    }
+
+    @Test(expected = IOException::class)
+    fun badFormatTest() {
+        GoLinterDiskCache.read(ByteBuffer.wrap(byteArrayOf(0, 0, 0, 0)))
+    }
+}
@@ -0,0 +1,99 @@
+package com.ypwang.plugin
+
+import com.ypwang.plugin.model.LintRunResult
+import com.ypwang.plugin.model.RunProcessResult
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class GoLinterExecutionPoolTest {
+    private val executor = Executors.newCachedThreadPool()
+
+    private fun invocation(runningPath: String, target: String) =
+        LintInvocation(runningPath, listOf("golangci-lint", "run", "--out-format", "json", target), listOf(), mapOf(), "", "")
+
+    // a report having one issue in each of files
+    private fun report(vararg files: String) =
+        RunProcessResult(
+            1,
+            files.joinToString(",", """{"Issues":[""", "]}") { """{"FromLinter":"unused","Text":"in $it","Pos":{"Filename":"$it","Offset":0,"Line":1,"Column":1}}""" },
+            ""
+        )
+
+    private fun submit(invocation: LintInvocation, slots: Int, task: (LintInvocation, () -> Boolean) -> RunProcessResult): Future<LintRunResult> =
+        executor.submit(Callable {
+            GoLinterExecutionPool.execute(invocation, "${invocation.runningPath}/${invocation.target}", null, LintPriority.BACKGROUND, slots, 0, task)
+        })
+
+    private fun waitUntil(condition: () -> Boolean) {
+        val deadline = System.currentTimeMillis() + 10000
+        while (!condition()) {
+            if (System.currentTimeMillis() > deadline)
+                Assert.fail("timed out")
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    fun coalescedReportSplitTest() {
+        val blocker = CountDownLatch(1)
+        try {
+            // holds the only slot, the next two queue up and are linted together once it's done
+            val first = submit(invocation("/pool/other", "."), 1) { _, _ ->
+                blocker.await()
+                report()
+            }
+            waitUntil { GoLinterExecutionPool.activeCount == 1 }
+
+            val runs = ConcurrentLinkedQueue<LintInvocation>()
+            val task = { merged: LintInvocation, _: (() -> Boolean) ->
+                runs.add(merged)
+                report("b/x.go", "c/y.go", "c/z.go", "d/w.go")
+            }
+            val b = submit(invocation("/pool/split", "b"), 1, task)
+            waitUntil { GoLinterExecutionPool.queuedCount == 1 }
+            val c = submit(invocation("/pool/split", "c"), 1, task)
+            waitUntil { GoLinterExecutionPool.queuedCount == 2 }
+            blocker.countDown()
+
+            // each gets only files of its own dir, a dir nobody asked for is dropped
+            Assert.assertEquals(listOf("b/x.go"), b.get(10, TimeUnit.SECONDS).files!!.keys.toList())
+            Assert.assertEquals(listOf("c/y.go", "c/z.go"), c.get(10, TimeUnit.SECONDS).files!!.keys.toList())
+            Assert.assertEquals(1, runs.size)
+            Assert.assertEquals(listOf("b", "c"), runs.single().parameters.takeLast(2))
+            Assert.assertEquals(mapOf<String, Any>(), first.get(10, TimeUnit.SECONDS).files)
+        } finally {
+            blocker.countDown()
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun differentTargetsNeverShareTest() {
+        val running = CountDownLatch(2)
+        val calls = AtomicInteger()
+        try {
+            // both must be running at the same time to finish, neither waits on the other's result
+            val task = { invocation: LintInvocation, _: (() -> Boolean) ->
+                calls.incrementAndGet()
+                running.countDown()
+                running.await(10, TimeUnit.SECONDS)
+                report("${invocation.target}/x.go")
+            }
+            val a = submit(invocation("/pool/share", "a"), 4, task)
+            val b = submit(invocation("/pool/share", "b"), 4, task)
+
+            Assert.assertEquals(listOf("a/x.go"), a.get(10, TimeUnit.SECONDS).files!!.keys.toList())
+            Assert.assertEquals(listOf("b/x.go"), b.get(10, TimeUnit.SECONDS).files!!.keys.toList())
+            Assert.assertEquals(2, calls.get())
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ypwang.plugin
+
+import org.junit.Assert
+import org.junit.Test
+
+class GoPackageChangeTrackerTest {
+    @Test
+    fun scanImportsTest() {
+        val text = """
+            // Package a does things
+            package a
+
+            import "fmt"
+            import (
+                "os"
+                str "strings"
+            )
+
+            func f() {}
+
+            import "late"
+        """.trimIndent()
+        Assert.assertEquals(listOf("fmt", "os", "strings"), GoPackageChangeTracker.scanImports(text))
+    }
+
+    @Test
+    fun blockCommentTest() {
+        val text = """
+            /*
+            Package a
+
+            import "commented"
+            func example() {}
+            */
+            package a
+
+            import ( /* "inline" */ "fmt" /* trailing
+            "spanning" */
+                "os" // "line"
+            )
+            import /* alias follows */ x "strings"
+        """.trimIndent()
+        Assert.assertEquals(listOf("fmt", "os", "strings"), GoPackageChangeTracker.scanImports(text))
+    }
+
+    @Test
+    fun aliasTest() {
+        val text = """
+            package a
+
+            import _ "embed"
+            import . "math"
+            import (
+                _ "net/http/pprof"
+                . "strings"
+                ünï "unicode"
+            )
+        """.trimIndent()
+        Assert.assertEquals(listOf("embed", "math", "net/http/pprof", "strings", "unicode"), GoPackageChangeTracker.scanImports(text))
+    }
+
+    @Test
+    fun rawStringTest() {
+        val text = """
+            package a
+
+            import `fmt`
+            import ("os"; s `strings`)
+            import "C"
+
+            var v = `
+            import "fake"
+            `
+        """.trimIndent()
+        Assert.assertEquals(listOf("fmt", "os", "strings", "C"), GoPackageChangeTracker.scanImports(text))
+    }
+}
@@ -0,0 +1,31 @@
+package com.ypwang.plugin
+
+import org.junit.Assert
+import org.junit.Test
+
+class LineRelocationTest {
+    @Test
+    fun lineHashesTest() {
+        Assert.assertEquals(1, lineHashes("").size)
+        Assert.assertEquals(3, lineHashes("a\nb\n").size)
+        // CRLF on disk hashes the same as the document
+        Assert.assertArrayEquals(lineHashes("a\nb"), lineHashes("a\r\nb"))
+        Assert.assertEquals(foldHash(lineHash("b")), lineHashes("a\nb\nc")[1])
+        Assert.assertEquals(lineHash("b"), lineHash("abc", 1, 2))
+    }
+
+    @Test
+    fun relocateTest() {
+        val before = lineHashes("package a\nfunc f() {\n\tx := 1\n}\nfunc g() {}")
+        // a block pasted on top, a line changed in f
+        val after = lineHashes("package a\nimport \"fmt\"\nvar v = 1\nfunc f() {\n\tx := 2\n}\nfunc g() {}")
+        val mapping = relocateLines(before, after)!!
+        Assert.assertArrayEquals(intArrayOf(0, 3, -1, 5, 6), mapping)
+    }
+
+    @Test
+    fun relocateRemovedTest() {
+        val mapping = relocateLines(lineHashes("a\nb\nc\nd"), lineHashes("a\nd"))!!
+        Assert.assertArrayEquals(intArrayOf(0, -1, -1, 1), mapping)
+    }
+}
@@ -24,4 +24,44 @@ class LintReportParseTest {
             Linter("gochecknoglobals", null, null)
         ), report.Report.Linters)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun streamingParseMatchesGson() {
+        val reportJson = """{"Issues":[{"FromLinter":"gofmt","Text":"File is not `gofmt`-ed","Pos":{"Filename":"b/b.go","Offset":0,"Line":9,"Column":0},"SourceLines":["x := 1"],"Replacement":{"NeedOnlyDelete":false,"NewLines":["\tx := 1"],"Inline":null},"LineRange":{"From":9,"To":9},"ExpectNoLint":false},{"FromLinter":"unused","Text":"`f` is unused","Pos":{"Filename":"a.go","Offset":10,"Line":3,"Column":6},"SourceLines":null,"Replacement":null},{"FromLinter":"gocritic","Text":"assignOp","Pos":{"Filename":"b/b.go","Offset":0,"Line":2,"Column":1},"SourceLines":["a = a + 1"],"Replacement":{"NeedOnlyDelete":false,"NewLines":null,"Inline":{"StartCol":0,"Length":9,"NewString":"a += 1"}}}],"Report":{"Linters":[{"Name":"govet","EnabledByDefault":true}]}}"""
+        val expected = Gson().fromJson(reportJson, LintReport::class.java)
+            .Issues!!
+            .sortedWith(compareBy({ issue -> issue.Pos.Filename }, { issue -> issue.Pos.Line }))
+
+        val files = LintReportParser.parse(reportJson.reader())
+        Assert.assertEquals(listOf("a.go", "b/b.go"), files.keys.toList())
+        Assert.assertEquals(expected, files.values.flatten())
+        Assert.assertEquals(mapOf<String, List<LintIssue>>(), LintReportParser.parse("""{"Issues":null,"Report":{}}""".reader()))
+    }
+
+    // same buckets as the former Gson path (decode whole string, reflect into model, group & sort) over a big generated report
+    @Test
+    fun parseLargeReport() {
+        val reportJson = buildString {
+            append("""{"Issues":[""")
+            for (i in 0 until 5000) {
+                if (i > 0)
+                    append(',')
+                val file = "pkg${i % 97}/file${i % 13}.go"
+                val line = (i * 7919) % 2000 + 1
+                append("""{"FromLinter":"gocritic","Text":"issue $i: `x` is unused","Pos":{"Filename":"$file","Offset":${line * 40},"Line":$line,"Column":2},"SourceLines":["\tx := f($i)"],"Replacement":""")
+                append(if (i % 5 == 0) """{"NeedOnlyDelete":false,"NewLines":null,"Inline":{"StartCol":1,"Length":2,"NewString":"y"}}""" else "null")
+                append("}")
+            }
+            append("""],"Report":{"Linters":[{"Name":"govet","EnabledByDefault":true}]}}""")
+        }
+
+        val expected =
+            Gson().fromJson(reportJson, LintReport::class.java)
+                .Issues!!
+                .groupBy { it.Pos.Filename }
+                .toSortedMap()
+                .mapValues { (_, issues) -> issues.sortedBy { it.Pos.Line } }
+
+        Assert.assertEquals(expected, LintReportParser.parse(reportJson.reader()))
+    }
+}
@@ -13,4 +13,14 @@ class ProcessWrapperTest {
         Assert.assertTrue(rst.contains("Non-authoritative answer:"))
         Assert.assertTrue(rst.contains("Name:\twww.google.com"))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun spillAndCapTest() {
+        val buffer = BoundedOutputBuffer(10, 4)
+        "0123456789abc".toByteArray().let { buffer.write(it, it.size) }
+        buffer.close(false)
+        Assert.assertTrue(buffer.truncated)
+        Assert.assertEquals(13, buffer.total)
+        Assert.assertEquals("0123456789", buffer.capture(Charsets.UTF_8).reader().use { it.readText() })
+    }
+}